@@ -28,55 +28,493 @@ import android.media.Image;
 import android.media.Image.Plane;
 import android.os.Build.VERSION_CODES;
 import androidx.annotation.Nullable;
+import android.util.Base64;
+import android.util.Base64OutputStream;
 import android.util.Log;
 import androidx.annotation.RequiresApi;
 import androidx.camera.core.ExperimentalGetImage;
 import androidx.camera.core.ImageProxy;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /** Utils functions for bitmap conversions. */
 public class BitmapUtils {
     private static final String TAG = "BitmapUtils";
+    // Below this many output pixels the stripe hand-off costs more than it saves.
+    private static final int MIN_PARALLEL_PIXELS = 640 * 480;
+    private static final int MIN_STRIPE_ROWS = 64;
+
+    /** JPEG scratch stream of the NV21 path, reused across frames of the same thread. */
+    private static final ThreadLocal<JpegStream> jpegStream =
+            new ThreadLocal<JpegStream>() {
+                @Override
+                protected JpegStream initialValue() {
+                    return new JpegStream();
+                }
+            };
+
+    /** Base64 scratch stream of {@link #toBase64Jpeg}, reused across snapshots of the same thread. */
+    private static final ThreadLocal<JpegStream> base64Stream =
+            new ThreadLocal<JpegStream>() {
+                @Override
+                protected JpegStream initialValue() {
+                    return new JpegStream();
+                }
+            };
+
+    /**
+     * Compresses a bitmap to JPEG and returns it base64 encoded, without line breaks.
+     *
+     * <p>The JPEG bytes are encoded while they are written, into a buffer reused across calls, so
+     * neither the JPEG byte array nor the base64 byte array is copied: the only new allocation is
+     * the returned String.
+     */
+    public static String toBase64Jpeg(Bitmap bitmap, int quality) {
+        JpegStream stream = base64Stream.get();
+        stream.reset();
+        // Rough size of the base64 text: a JPEG of about half a byte per pixel, times 4/3 once
+        // encoded. Avoids growing the buffer step by step the first time
+        stream.reserve(bitmap.getWidth() * bitmap.getHeight() / 2 / 3 * 4);
+        Base64OutputStream encoder = new Base64OutputStream(stream, Base64.NO_WRAP);
+        bitmap.compress(Bitmap.CompressFormat.JPEG, quality, encoder);
+        try {
+            // Writes the final padding
+            encoder.close();
+        } catch (IOException e) {
+            // Not thrown by an in-memory stream
+            Log.e(TAG, "Error encoding snapshot: " + e.getMessage());
+        }
+        return new String(stream.buffer(), 0, stream.size(), StandardCharsets.US_ASCII);
+    }
+
+    /** Write buffer of {@link #writeJpeg}, reused across files written by the same thread. */
+    private static final ThreadLocal<ByteBuffer> fileBuffer =
+            new ThreadLocal<ByteBuffer>() {
+                @Override
+                protected ByteBuffer initialValue() {
+                    return ByteBuffer.allocateDirect(256 * 1024);
+                }
+            };
+
+    /**
+     * Compresses a bitmap to a JPEG file. The encoder output is gathered in a reused direct buffer
+     * and written to the file channel in large blocks.
+     */
+    public static void writeJpeg(Bitmap bitmap, int quality, File file) throws IOException {
+        try (FileOutputStream fileOutput = new FileOutputStream(file);
+             ChannelOutputStream output = new ChannelOutputStream(fileOutput.getChannel(), fileBuffer.get())) {
+            if (!bitmap.compress(Bitmap.CompressFormat.JPEG, quality, output)) {
+                throw new IOException("JPEG compression failed");
+            }
+        }
+    }
 
     /** Converts NV21 format byte buffer to bitmap. */
     @Nullable
     public static Bitmap getBitmap(ByteBuffer data, FrameMetadata metadata) {
+        return getBitmap(data, metadata, null, false, false);
+    }
+
+    /** Converts the {@code crop} region (or all) of an NV21 format byte buffer to bitmap. */
+    @Nullable
+    public static Bitmap getBitmap(
+            ByteBuffer data, FrameMetadata metadata, @Nullable Rect crop, boolean flipX, boolean flipY) {
         data.rewind();
-        byte[] imageInBuffer = new byte[data.limit()];
-        data.get(imageInBuffer, 0, imageInBuffer.length);
+        byte[] imageInBuffer;
+        if (data.hasArray() && data.arrayOffset() == 0 && data.array().length == data.limit()) {
+            // The buffer wraps a whole array already, no need to copy it again.
+            imageInBuffer = data.array();
+        } else {
+            imageInBuffer = new byte[data.limit()];
+            data.get(imageInBuffer, 0, imageInBuffer.length);
+        }
         try {
             YuvImage image =
                     new YuvImage(
                             imageInBuffer, ImageFormat.NV21, metadata.getWidth(), metadata.getHeight(), null);
-            ByteArrayOutputStream stream = new ByteArrayOutputStream();
-            image.compressToJpeg(new Rect(0, 0, metadata.getWidth(), metadata.getHeight()), 80, stream);
+            JpegStream stream = jpegStream.get();
+            stream.reset();
+            Rect region = crop != null ? crop : new Rect(0, 0, metadata.getWidth(), metadata.getHeight());
+            image.compressToJpeg(region, 80, stream);
 
-            Bitmap bmp = BitmapFactory.decodeByteArray(stream.toByteArray(), 0, stream.size());
+            Bitmap bmp = BitmapFactory.decodeByteArray(stream.buffer(), 0, stream.size());
 
-            stream.close();
-            return rotateBitmap(bmp, metadata.getRotation(), false, false);
+            return rotateBitmap(bmp, metadata.getRotation(), flipX, flipY);
         } catch (Exception e) {
             Log.e("VisionProcessorBase", "Error: " + e.getMessage());
         }
         return null;
     }
 
-    /** Converts a YUV_420_888 image from CameraX API to a bitmap. */
+    /**
+     * Converts a YUV_420_888 image from CameraX API to a bitmap.
+     *
+     * <p>The planes are converted straight to ARGB_8888 pixels, which avoids the NV21 to JPEG to
+     * Bitmap round-trip of {@link #getBitmapViaJpeg(ImageProxy)}. The legacy path is still used as a
+     * fallback if the direct conversion fails on an unexpected plane layout.
+     */
     @RequiresApi(VERSION_CODES.LOLLIPOP)
     @Nullable
     @ExperimentalGetImage
     public static Bitmap getBitmap(ImageProxy image) {
+        return getBitmap(image, null, false, false, 1, null);
+    }
+
+    /**
+     * Converts a YUV_420_888 image from CameraX API to a bitmap, borrowing the intermediate pixel
+     * buffer from {@code pool} instead of allocating a new one for every frame.
+     *
+     * <p>The pixels are written already rotated by the image rotation degrees and mirrored as
+     * requested, so no second Bitmap has to be rendered through a Matrix.
+     *
+     * @param crop region to convert in sensor (unrotated) coordinates, or null for the whole frame.
+     *     Only the rows and columns inside it are read and converted.
+     * @param flipX mirror the upright image horizontally, e.g. for front cameras
+     * @param flipY mirror the upright image vertically
+     * @param sampleStep integer downscale factor applied during conversion, see {@link
+     *     #getSampleStep}. 1 converts at full resolution.
+     */
+    @RequiresApi(VERSION_CODES.LOLLIPOP)
+    @Nullable
+    @ExperimentalGetImage
+    public static Bitmap getBitmap(
+            ImageProxy image,
+            @Nullable Rect crop,
+            boolean flipX,
+            boolean flipY,
+            int sampleStep,
+            @Nullable FrameBufferPool pool) {
+        Rect region = crop != null ? crop : new Rect(0, 0, image.getWidth(), image.getHeight());
+        int step = Math.max(1, Math.min(sampleStep, Math.min(region.width(), region.height())));
+        int rotation = image.getImageInfo().getRotationDegrees();
+        boolean swapped = rotation == 90 || rotation == 270;
+        int width = (swapped ? region.height() : region.width()) / step;
+        int height = (swapped ? region.width() : region.height()) / step;
+        int[] argb = pool != null ? pool.acquireInts(width, height) : new int[width * height];
+        try {
+            yuv420ToArgb(image.getPlanes(), region, rotation, flipX, flipY, step, argb);
+            // createBitmap copies the pixels, so the buffer can go back to the pool right away.
+            return Bitmap.createBitmap(argb, width, height, Bitmap.Config.ARGB_8888);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Direct YUV conversion failed, falling back to JPEG: " + e.getMessage());
+        } finally {
+            if (pool != null) {
+                pool.release(argb, width, height);
+            }
+        }
+        Bitmap bitmap = getBitmapViaJpeg(image, region, flipX, flipY, pool);
+        if (bitmap != null && step > 1) {
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap, width, height, true);
+            if (scaled != bitmap) {
+                bitmap.recycle();
+            }
+            bitmap = scaled;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Picks the integer downscale factor for converting a {@code width x height} region.
+     *
+     * @param maxLength longest side wanted for the result, or 0 for no limit. The step is rounded
+     *     up so the result never exceeds it.
+     * @param scale wanted scale factor in (0, 1], or 0 for none. Rounded to the nearest 1/step.
+     * @return the sample step, 1 meaning full resolution
+     */
+    public static int getSampleStep(int width, int height, int maxLength, double scale) {
+        int step = 1;
+        if (maxLength > 0) {
+            int longest = Math.max(width, height);
+            step = Math.max(step, (longest + maxLength - 1) / maxLength);
+        }
+        if (scale > 0 && scale < 1) {
+            step = Math.max(step, (int) Math.round(1 / scale));
+        }
+        return step;
+    }
+
+    /**
+     * Converts an RGBA_8888 image from CameraX API (analysis with {@code
+     * OUTPUT_IMAGE_FORMAT_RGBA_8888}) to a bitmap.
+     *
+     * <p>The plane is copied into a reused frame Bitmap with {@link Bitmap#copyPixelsFromBuffer}, so no
+     * color conversion happens in Java. Crop, rotation, mirroring and downscaling are then applied in
+     * a single {@link Bitmap#createBitmap(Bitmap, int, int, int, int, Matrix, boolean)} call.
+     */
+    @Nullable
+    public static Bitmap getBitmapFromRgba(
+            ImageProxy image,
+            @Nullable Rect crop,
+            boolean flipX,
+            boolean flipY,
+            int sampleStep,
+            @Nullable FrameBufferPool pool) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        ImageProxy.PlaneProxy plane = image.getPlanes()[0];
+        ByteBuffer buffer = plane.getBuffer().duplicate();
+        buffer.rewind();
+        int rowLength = width * 4;
+
+        Bitmap frame = pool != null ? pool.acquireBitmap(width, height) : Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        byte[] packed = null;
+        try {
+            if (plane.getRowStride() == rowLength && plane.getPixelStride() == 4) {
+                frame.copyPixelsFromBuffer(buffer);
+            } else {
+                // Strip the row padding first, copyPixelsFromBuffer expects tightly packed rows.
+                packed = pool != null ? pool.acquireRgbaBytes(width, height) : new byte[rowLength * height];
+                for (int row = 0; row < height; row++) {
+                    copyRow(buffer, row * plane.getRowStride(), packed, row * rowLength, rowLength);
+                }
+                frame.copyPixelsFromBuffer(ByteBuffer.wrap(packed));
+            }
+
+            Rect region = crop != null ? crop : new Rect(0, 0, width, height);
+            int step = Math.max(1, Math.min(sampleStep, Math.min(region.width(), region.height())));
+            Matrix matrix = new Matrix();
+            matrix.postRotate(image.getImageInfo().getRotationDegrees());
+            matrix.postScale((flipX ? -1.0f : 1.0f) / step, (flipY ? -1.0f : 1.0f) / step);
+            return Bitmap.createBitmap(frame, region.left, region.top, region.width(), region.height(), matrix, step > 1);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "RGBA conversion failed: " + e.getMessage());
+            return null;
+        } finally {
+            if (pool != null) {
+                pool.release(frame);
+                pool.release(packed, width, height);
+            }
+        }
+    }
+
+    /** Converts a YUV_420_888 image from CameraX API to a bitmap through NV21 and JPEG. */
+    @RequiresApi(VERSION_CODES.LOLLIPOP)
+    @Nullable
+    @ExperimentalGetImage
+    public static Bitmap getBitmapViaJpeg(ImageProxy image) {
+        return getBitmapViaJpeg(image, null, false, false, null);
+    }
+
+    /** Converts a YUV_420_888 image to a bitmap through NV21 and JPEG, using a pooled NV21 buffer. */
+    @RequiresApi(VERSION_CODES.LOLLIPOP)
+    @Nullable
+    @ExperimentalGetImage
+    public static Bitmap getBitmapViaJpeg(
+            ImageProxy image, @Nullable Rect crop, boolean flipX, boolean flipY, @Nullable FrameBufferPool pool) {
+        int width = image.getWidth();
+        int height = image.getHeight();
         FrameMetadata frameMetadata =
                 new FrameMetadata.Builder()
-                        .setWidth(image.getWidth())
-                        .setHeight(image.getHeight())
+                        .setWidth(width)
+                        .setHeight(height)
                         .setRotation(image.getImageInfo().getRotationDegrees())
                         .build();
 
-        ByteBuffer nv21Buffer =
-                yuv420ThreePlanesToNV21(image.getImage().getPlanes(), image.getWidth(), image.getHeight());
-        return getBitmap(nv21Buffer, frameMetadata);
+        byte[] nv21 = pool != null ? pool.acquireBytes(width, height) : new byte[FrameBufferPool.nv21Size(width, height)];
+        try {
+            ByteBuffer nv21Buffer = yuv420ThreePlanesToNV21(image.getImage().getPlanes(), width, height, nv21);
+            return getBitmap(nv21Buffer, frameMetadata, crop, flipX, flipY);
+        } finally {
+            if (pool != null) {
+                pool.release(nv21, width, height);
+            }
+        }
+    }
+
+    /**
+     * Converts the {@code crop} region of a YUV_420_888 image to upright ARGB_8888 pixels.
+     *
+     * <p>Rows are bulk-copied out of the plane buffers and then converted with fixed-point BT.601
+     * full-range coefficients, which is the same color space {@link YuvImage} assumes when it
+     * encodes JPEG. Row and pixel strides are honored, so interleaved (NV21/NV12) and planar (I420)
+     * chroma layouts are both handled. Chroma samples are addressed with absolute sensor
+     * coordinates, so the crop does not need to be aligned to even pixels. Every pixel is stored at
+     * its rotated and mirrored position, matching what {@link #rotateBitmap} would produce.
+     *
+     * <p>With a {@code step} above 1 the region is downscaled while converting: each output pixel
+     * takes the box average of a {@code step x step} block of luma and the chroma sample at the
+     * block center, so no full-size intermediate is ever produced.
+     *
+     * <p>Large frames are split into row stripes converted on {@link ParallelWorkers} when parallel
+     * mode is enabled.
+     *
+     * @param crop region to convert in sensor coordinates
+     * @param rotationDegrees clockwise rotation to apply, one of 0, 90, 180 or 270
+     * @param step integer downscale factor, 1 for full resolution
+     * @param out destination array holding at least {@code (crop.width() / step) * (crop.height() /
+     *     step)} pixels, laid out as rows of the rotated image
+     */
+    static void yuv420ToArgb(
+            ImageProxy.PlaneProxy[] planes,
+            Rect crop,
+            int rotationDegrees,
+            boolean flipX,
+            boolean flipY,
+            int step,
+            int[] out) {
+        int width = crop.width() / step;
+        int height = crop.height() / step;
+        OutputMapping mapping = new OutputMapping(width, height, rotationDegrees, flipX, flipY);
+        if (width * height < MIN_PARALLEL_PIXELS) {
+            convertRows(planes, crop, step, mapping, out, 0, height);
+        } else {
+            // Stripes of output rows write disjoint pixels, so the result does not depend on the split.
+            ParallelWorkers.runStripes(height, MIN_STRIPE_ROWS,
+                    (start, end) -> convertRows(planes, crop, step, mapping, out, start, end));
+        }
+    }
+
+    /** Converts the output rows [rowStart, rowEnd) of {@link #yuv420ToArgb}. Safe to run concurrently. */
+    private static void convertRows(
+            ImageProxy.PlaneProxy[] planes,
+            Rect crop,
+            int step,
+            OutputMapping mapping,
+            int[] out,
+            int rowStart,
+            int rowEnd) {
+        // Duplicate the buffers so the positions of the shared plane buffers are left untouched.
+        ByteBuffer yBuffer = planes[0].getBuffer().duplicate();
+        ByteBuffer uBuffer = planes[1].getBuffer().duplicate();
+        ByteBuffer vBuffer = planes[2].getBuffer().duplicate();
+        int yRowStride = planes[0].getRowStride();
+        // U and V planes are guaranteed to share the same row and pixel strides.
+        int uvRowStride = planes[1].getRowStride();
+        int uvPixelStride = planes[1].getPixelStride();
+
+        // Output grid, in samples of step x step source pixels.
+        int width = crop.width() / step;
+        int half = step / 2;
+        int blockArea = step * step;
+        int firstChromaCol = (crop.left + half) >> 1;
+        int lastChromaCol = (crop.left + (width - 1) * step + half) >> 1;
+        int uvRowLength = (lastChromaCol - firstChromaCol) * uvPixelStride + 1;
+        byte[] yRow = new byte[width * step];
+        byte[] uRow = new byte[uvRowLength];
+        byte[] vRow = new byte[uvRowLength];
+        int[] ySums = step > 1 ? new int[width] : null;
+
+        int chromaRow = -1;
+        for (int row = rowStart; row < rowEnd; row++) {
+            int sourceRow = crop.top + row * step;
+            if (step == 1) {
+                copyRow(yBuffer, sourceRow * yRowStride + crop.left, yRow, width);
+            } else {
+                sumLumaBlocks(yBuffer, yRowStride, crop.left, sourceRow, width, step, yRow, ySums);
+            }
+            if (((sourceRow + half) >> 1) != chromaRow) {
+                chromaRow = (sourceRow + half) >> 1;
+                int uvOffset = chromaRow * uvRowStride + firstChromaCol * uvPixelStride;
+                copyRow(uBuffer, uvOffset, uRow, uvRowLength);
+                copyRow(vBuffer, uvOffset, vRow, uvRowLength);
+            }
+            int outputPos = mapping.origin + row * mapping.rowStep;
+            for (int col = 0; col < width; col++) {
+                int luma = step == 1 ? yRow[col] & 0xFF : ySums[col] / blockArea;
+                int uvIndex = (((crop.left + col * step + half) >> 1) - firstChromaCol) * uvPixelStride;
+                out[outputPos] = yuvToArgb(luma, (uRow[uvIndex] & 0xFF) - 128, (vRow[uvIndex] & 0xFF) - 128);
+                outputPos += mapping.colStep;
+            }
+        }
+    }
+
+    /**
+     * Sums the luma of {@code width} horizontally adjacent {@code step x step} blocks whose top-left
+     * corner is at ({@code left}, {@code top}) into {@code sums}.
+     */
+    private static void sumLumaBlocks(
+            ByteBuffer yBuffer, int yRowStride, int left, int top, int width, int step, byte[] row, int[] sums) {
+        Arrays.fill(sums, 0, width, 0);
+        for (int k = 0; k < step; k++) {
+            copyRow(yBuffer, (top + k) * yRowStride + left, row, width * step);
+            int pos = 0;
+            for (int col = 0; col < width; col++) {
+                int sum = 0;
+                for (int j = 0; j < step; j++) {
+                    sum += row[pos++] & 0xFF;
+                }
+                sums[col] += sum;
+            }
+        }
+    }
+
+    /**
+     * Maps a source position (col, row) of a {@code width x height} grid to its index in the rotated
+     * and mirrored output: {@code origin + col * colStep + row * rowStep}.
+     */
+    static class OutputMapping {
+        final int outputWidth;
+        final int outputHeight;
+        final int origin;
+        final int colStep;
+        final int rowStep;
+
+        OutputMapping(int width, int height, int rotationDegrees, boolean flipX, boolean flipY) {
+            boolean swapped = rotationDegrees == 90 || rotationDegrees == 270;
+            outputWidth = swapped ? height : width;
+            outputHeight = swapped ? width : height;
+
+            // Output x and y as affine functions of the source col and row: x = x0 + xc*col + xr*row.
+            int x0, xc, xr, y0, yc, yr;
+            switch (rotationDegrees) {
+                case 90:
+                    x0 = height - 1; xc = 0; xr = -1;
+                    y0 = 0; yc = 1; yr = 0;
+                    break;
+                case 180:
+                    x0 = width - 1; xc = -1; xr = 0;
+                    y0 = height - 1; yc = 0; yr = -1;
+                    break;
+                case 270:
+                    x0 = 0; xc = 0; xr = 1;
+                    y0 = width - 1; yc = -1; yr = 0;
+                    break;
+                default:
+                    x0 = 0; xc = 1; xr = 0;
+                    y0 = 0; yc = 0; yr = 1;
+                    break;
+            }
+            // Mirroring is applied after the rotation, like Matrix.postScale in rotateBitmap.
+            if (flipX) {
+                x0 = outputWidth - 1 - x0; xc = -xc; xr = -xr;
+            }
+            if (flipY) {
+                y0 = outputHeight - 1 - y0; yc = -yc; yr = -yr;
+            }
+            origin = y0 * outputWidth + x0;
+            colStep = yc * outputWidth + xc;
+            rowStep = yr * outputWidth + xr;
+        }
+    }
+
+    /** Copies {@code length} bytes starting at the absolute {@code offset} of a buffer. */
+    private static void copyRow(ByteBuffer buffer, int offset, byte[] dst, int length) {
+        copyRow(buffer, offset, dst, 0, length);
+    }
+
+    /** Copies {@code length} bytes from the absolute {@code offset} of a buffer to {@code dst[dstOffset]}. */
+    private static void copyRow(ByteBuffer buffer, int offset, byte[] dst, int dstOffset, int length) {
+        buffer.position(offset);
+        buffer.get(dst, dstOffset, length);
+    }
+
+    /** Converts one full-range YUV sample (U and V centered on zero) to an opaque ARGB pixel. */
+    private static int yuvToArgb(int y, int u, int v) {
+        // 16.16 fixed-point versions of 1.402, 0.344136, 0.714136 and 1.772.
+        int r = y + ((91881 * v) >> 16);
+        int g = y - ((22554 * u + 46802 * v) >> 16);
+        int b = y + ((116130 * u) >> 16);
+        r = r < 0 ? 0 : (r > 255 ? 255 : r);
+        g = g < 0 ? 0 : (g > 255 ? 255 : g);
+        b = b < 0 ? 0 : (b > 255 ? 255 : b);
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
     }
 
     /** Rotates a bitmap if it is converted from a bytebuffer. */
@@ -115,12 +553,14 @@ public class BitmapUtils {
      * NV21 format. This happens if the planes share the same buffer, the V buffer is one position
      * before the U buffer and the planes have a pixelStride of 2. If this is case, we can just copy
      * them to the NV21 array.
+     *
+     * <p>{@code out} must hold {@link FrameBufferPool#nv21Size} bytes; it is usually borrowed from a
+     * {@link FrameBufferPool} so that no frame-sized array is allocated per call.
      */
     @RequiresApi(VERSION_CODES.KITKAT)
     private static ByteBuffer yuv420ThreePlanesToNV21(
-            Plane[] yuv420888planes, int width, int height) {
+            Plane[] yuv420888planes, int width, int height, byte[] out) {
         int imageSize = width * height;
-        byte[] out = new byte[imageSize + 2 * (imageSize / 4)];
 
         if (areUVPlanesNV21(yuv420888planes, width, height)) {
             // Copy the Y values.
@@ -133,18 +573,126 @@ public class BitmapUtils {
             // Copy the first U value and the remaining VU values from the U buffer.
             uBuffer.get(out, imageSize + 1, 2 * imageSize / 4 - 1);
         } else {
-            // Fallback to copying the UV values one by one, which is slower but also works.
-            // Unpack Y.
-            unpackPlane(yuv420888planes[0], width, height, out, 0, 1);
-            // Unpack U.
-            unpackPlane(yuv420888planes[1], width, height, out, imageSize + 1, 2);
-            // Unpack V.
-            unpackPlane(yuv420888planes[2], width, height, out, imageSize, 2);
+            // Copy Y with bulk row reads.
+            unpackLuma(yuv420888planes[0], width, height, out);
+            int uvLayout = getUVLayout(yuv420888planes, width, height);
+            if (uvLayout == UV_LAYOUT_OTHER) {
+                // Fallback to copying the UV values one by one, which is slower but also works.
+                // Unpack U.
+                unpackPlane(yuv420888planes[1], width, height, out, imageSize + 1, 2);
+                // Unpack V.
+                unpackPlane(yuv420888planes[2], width, height, out, imageSize, 2);
+            } else {
+                unpackChroma(yuv420888planes, width, height, out, imageSize, uvLayout);
+            }
         }
 
         return ByteBuffer.wrap(out);
     }
 
+    // Chroma layouts of YUV_420_888 planes that are not already NV21.
+    private static final int UV_LAYOUT_OTHER = 0;
+    // Planar U and V, pixel stride 1 (I420 / YV12).
+    private static final int UV_LAYOUT_I420 = 1;
+    // Interleaved UVUV..., the V plane starting one byte after the U plane.
+    private static final int UV_LAYOUT_NV12 = 2;
+    // Pixel stride 2 without a known relation between the U and V buffers.
+    private static final int UV_LAYOUT_STRIDE_2 = 3;
+
+    /** Detects the chroma layout, used to pick a specialized copier. */
+    @RequiresApi(VERSION_CODES.KITKAT)
+    private static int getUVLayout(Plane[] planes, int width, int height) {
+        int pixelStride = planes[1].getPixelStride();
+        if (pixelStride != planes[2].getPixelStride() || planes[1].getRowStride() != planes[2].getRowStride()) {
+            return UV_LAYOUT_OTHER;
+        }
+        if (pixelStride == 1) {
+            return UV_LAYOUT_I420;
+        }
+        if (pixelStride != 2) {
+            return UV_LAYOUT_OTHER;
+        }
+
+        ByteBuffer uBuffer = planes[1].getBuffer().duplicate();
+        ByteBuffer vBuffer = planes[2].getBuffer().duplicate();
+        uBuffer.rewind();
+        vBuffer.rewind();
+        // NV12 is the mirror image of the NV21 check: U holds the first value, V the last one.
+        uBuffer.position(1);
+        vBuffer.limit(vBuffer.limit() - 1);
+        boolean isNV12 = uBuffer.remaining() == vBuffer.remaining() && uBuffer.compareTo(vBuffer) == 0;
+        return isNV12 ? UV_LAYOUT_NV12 : UV_LAYOUT_STRIDE_2;
+    }
+
+    /** Copies the Y plane into the first {@code width * height} bytes of {@code out}. */
+    @RequiresApi(VERSION_CODES.KITKAT)
+    private static void unpackLuma(Plane plane, int width, int height, byte[] out) {
+        ByteBuffer buffer = plane.getBuffer().duplicate();
+        int rowStride = plane.getRowStride();
+        if (rowStride == width) {
+            // No row padding: a single bulk read.
+            copyRow(buffer, 0, out, 0, width * height);
+            return;
+        }
+        for (int row = 0; row < height; row++) {
+            copyRow(buffer, row * rowStride, out, row * width, width);
+        }
+    }
+
+    /**
+     * Writes the U and V planes as interleaved VU values at {@code offset} of {@code out}, using
+     * bulk row reads specialized for the detected layout.
+     */
+    @RequiresApi(VERSION_CODES.KITKAT)
+    private static void unpackChroma(Plane[] planes, int width, int height, byte[] out, int offset, int layout) {
+        ByteBuffer uBuffer = planes[1].getBuffer().duplicate();
+        ByteBuffer vBuffer = planes[2].getBuffer().duplicate();
+        int rowStride = planes[1].getRowStride();
+        int chromaWidth = width / 2;
+        int chromaHeight = height / 2;
+        int outputPos = offset;
+
+        if (layout == UV_LAYOUT_I420) {
+            byte[] uRow = new byte[chromaWidth];
+            byte[] vRow = new byte[chromaWidth];
+            for (int row = 0; row < chromaHeight; row++) {
+                copyRow(uBuffer, row * rowStride, uRow, 0, chromaWidth);
+                copyRow(vBuffer, row * rowStride, vRow, 0, chromaWidth);
+                for (int col = 0; col < chromaWidth; col++) {
+                    out[outputPos++] = vRow[col];
+                    out[outputPos++] = uRow[col];
+                }
+            }
+        } else if (layout == UV_LAYOUT_NV12) {
+            // The U buffer holds UVUV...; the very last V of a row may lie past its end.
+            byte[] uvRow = new byte[2 * chromaWidth];
+            for (int row = 0; row < chromaHeight; row++) {
+                int rowOffset = row * rowStride;
+                int length = Math.min(2 * chromaWidth, uBuffer.limit() - rowOffset);
+                copyRow(uBuffer, rowOffset, uvRow, 0, length);
+                if (length < 2 * chromaWidth) {
+                    uvRow[2 * chromaWidth - 1] = vBuffer.get(rowOffset + 2 * chromaWidth - 2);
+                }
+                for (int col = 0; col < 2 * chromaWidth; col += 2) {
+                    out[outputPos++] = uvRow[col + 1];
+                    out[outputPos++] = uvRow[col];
+                }
+            }
+        } else {
+            int rowLength = 2 * chromaWidth - 1;
+            byte[] uRow = new byte[rowLength];
+            byte[] vRow = new byte[rowLength];
+            for (int row = 0; row < chromaHeight; row++) {
+                copyRow(uBuffer, row * rowStride, uRow, 0, rowLength);
+                copyRow(vBuffer, row * rowStride, vRow, 0, rowLength);
+                for (int col = 0; col < rowLength; col += 2) {
+                    out[outputPos++] = vRow[col];
+                    out[outputPos++] = uRow[col];
+                }
+            }
+        }
+    }
+
     /** Checks if the UV plane buffers of a YUV_420_888 image are in the NV21 format. */
     @RequiresApi(VERSION_CODES.KITKAT)
     private static boolean areUVPlanesNV21(Plane[] planes, int width, int height) {
@@ -184,10 +732,12 @@ public class BitmapUtils {
             Plane plane, int width, int height, byte[] out, int offset, int pixelStride) {
         ByteBuffer buffer = plane.getBuffer();
         buffer.rewind();
+        int rowStride = plane.getRowStride();
+        int inputPixelStride = plane.getPixelStride();
 
         // Compute the size of the current plane.
         // We assume that it has the aspect ratio as the original image.
-        int numRow = (buffer.limit() + plane.getRowStride() - 1) / plane.getRowStride();
+        int numRow = (buffer.limit() + rowStride - 1) / rowStride;
         if (numRow == 0) {
             return;
         }
@@ -202,9 +752,74 @@ public class BitmapUtils {
             for (int col = 0; col < numCol; col++) {
                 out[outputPos] = buffer.get(inputPos);
                 outputPos += pixelStride;
-                inputPos += plane.getPixelStride();
+                inputPos += inputPixelStride;
+            }
+            rowStart += rowStride;
+        }
+    }
+
+    /** OutputStream gathering writes in a buffer and flushing it to a file channel when full. */
+    private static class ChannelOutputStream extends OutputStream {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+
+        ChannelOutputStream(FileChannel channel, ByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+            buffer.clear();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                int count = Math.min(length, buffer.remaining());
+                buffer.put(data, offset, count);
+                offset += count;
+                length -= count;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    /** ByteArrayOutputStream that exposes its internal array to avoid the toByteArray() copy. */
+    private static class JpegStream extends ByteArrayOutputStream {
+        JpegStream() {
+            super(256 * 1024);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+
+        /** Makes room for {@code size} bytes, to be called right after {@link #reset()}. */
+        void reserve(int size) {
+            if (buf.length < size) {
+                buf = new byte[size];
             }
-            rowStart += plane.getRowStride();
         }
     }
 }
@@ -2,52 +2,63 @@ package com.tonyxlh.capacitor.camera;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.Rect;
 import android.util.Log;
 
-import org.tensorflow.lite.Interpreter;
+import androidx.camera.core.ImageProxy;
+
 import org.tensorflow.lite.support.common.FileUtil;
-import org.tensorflow.lite.support.image.ImageProcessor;
-import org.tensorflow.lite.support.image.TensorImage;
-import org.tensorflow.lite.support.image.ops.ResizeOp;
-import org.tensorflow.lite.support.image.ops.ResizeWithCropOrPadOp;
-
-import org.tensorflow.lite.support.tensorbuffer.TensorBuffer;
-import android.graphics.ColorMatrix;
-import android.graphics.ColorMatrixColorFilter;
-import android.graphics.Paint;
-import android.graphics.Canvas;
-import org.tensorflow.lite.DataType;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.FloatBuffer;
 import java.nio.MappedByteBuffer;
-import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * TensorFlow Lite Blur Detection Helper
  * Based on MobileNetV2 model trained for blur detection
+ * Inference runs on a pool of interpreters, so live frames and on-demand requests do not race or
+ * wait on each other unless every interpreter is busy.
  */
 public class BlurDetectionHelper {
     private static final String TAG = "BlurDetectionHelper";
     private static final String MODEL_FILENAME = "blur_detection_model.tflite";
-    private static int INPUT_SIZE = 224; // Will be updated based on actual model input size
     private static final int NUM_CLASSES = 2; // blur, sharp
-    
-    private Interpreter tflite;
-    private ImageProcessor imageProcessor;
-    private TensorImage inputImageBuffer;
-    private TensorBuffer outputProbabilityBuffer;
-    private boolean isInitialized = false;
+    private static final int LAPLACIAN_STEP = 4; // Sample every 4th pixel for performance
+    private static final int DEFAULT_INTERPRETER_COUNT = 2;
+    public static final String STAGE_LAPLACIAN = "laplacian";
+    public static final String STAGE_MODEL = "model";
+    /** Name of the blur model in a {@link QualityEngine} */
+    public static final String QUALITY_MODEL_NAME = "blur";
+
+    private InterpreterPool interpreterPool;
+    private volatile boolean isInitialized = false;
+    private volatile boolean isClosed = false;
+    // Cascade: Laplacian variance below low is blurry, above high is sharp, the model decides in between
+    private volatile boolean cascadeEnabled = false;
+    private volatile double cascadeLow = 50;
+    private volatile double cascadeHigh = 300;
+
+    /**
+     * Outcome of a blur check, with the stage of the cascade that decided it
+     */
+    public static class BlurResult {
+        public final boolean isBlur;
+        /** {@link #STAGE_LAPLACIAN} or {@link #STAGE_MODEL} */
+        public final String stage;
+        /** Laplacian variance, NaN if it was not computed */
+        public final double laplacianScore;
+
+        public BlurResult(boolean isBlur, String stage, double laplacianScore) {
+            this.isBlur = isBlur;
+            this.stage = stage;
+            this.laplacianScore = laplacianScore;
+        }
+    }
 
 
     public BlurDetectionHelper() {
-        // Initialize image processor for MobileNetV2 preprocessing
-        // Note: Manual normalization will be done in detectBlur method
-        imageProcessor = new ImageProcessor.Builder()
-                .add(new ResizeWithCropOrPadOp(INPUT_SIZE, INPUT_SIZE))
-                .add(new ResizeOp(INPUT_SIZE, INPUT_SIZE, ResizeOp.ResizeMethod.BILINEAR))
-                .build();
     }
 
     /**
@@ -56,51 +67,42 @@ public class BlurDetectionHelper {
      * @return true if initialization successful
      */
     public boolean initialize(Context context) {
+        return initialize(context, DEFAULT_INTERPRETER_COUNT, 0);
+    }
+
+    /**
+     * Initialize the TFLite model with a pool of interpreters and warm them up. This maps the model
+     * and builds the interpreters, so it should be called off the UI thread; the helper uses the
+     * Laplacian fallback until it returns
+     * @param context Android context to access assets
+     * @param interpreterCount number of interpreters able to run at the same time
+     * @param threadsPerInterpreter threads used by each interpreter, 0 to use the configuration
+     *     calibrated for this device (see {@link InterpreterTuner})
+     * @return true if initialization successful
+     */
+    public boolean initialize(Context context, int interpreterCount, int threadsPerInterpreter) {
         try {
             // Load model from assets
             MappedByteBuffer tfliteModel = FileUtil.loadMappedFile(context, MODEL_FILENAME);
-            
-            // Configure interpreter options for better performance
-            Interpreter.Options options = new Interpreter.Options();
-            options.setNumThreads(4); // Use multiple threads for better performance
-            
-            // Try to use GPU acceleration if available
-            try {
-                options.setUseXNNPACK(true);
-            } catch (Exception e) {
-                // XNNPACK not available, using CPU
-            }
-            
-            tflite = new Interpreter(tfliteModel, options);
-            
-            // Initialize input and output buffers
-            // Use the same data type as the model's input tensor
-            inputImageBuffer = new TensorImage(tflite.getInputTensor(0).dataType());
-            outputProbabilityBuffer = TensorBuffer.createFixedSize(
-                    tflite.getOutputTensor(0).shape(),
-                    tflite.getOutputTensor(0).dataType()
-            );
-            
-            // Update INPUT_SIZE based on actual model input shape
-            int[] inputShape = tflite.getInputTensor(0).shape();
-            
-            // Update INPUT_SIZE based on actual model input shape
-            // Expected format: [batch, height, width, channels] or [batch, channels, height, width]
-            if (inputShape.length >= 3) {
-                // Assume format is [batch, height, width, channels]
-                int modelInputSize = inputShape[1]; // height dimension
-                if (modelInputSize != INPUT_SIZE) {
-                    INPUT_SIZE = modelInputSize;
-                    
-                    // Recreate image processor with correct size
-                    imageProcessor = new ImageProcessor.Builder()
-                        .add(new ResizeWithCropOrPadOp(INPUT_SIZE, INPUT_SIZE))
-                        .add(new ResizeOp(INPUT_SIZE, INPUT_SIZE, ResizeOp.ResizeMethod.BILINEAR))
-                        .build();
+
+            int count = Math.max(1, interpreterCount);
+            // Explicit thread count, otherwise the configuration benchmarked on this device
+            InterpreterTuner.Config config = threadsPerInterpreter > 0
+                    ? new InterpreterTuner.Config(threadsPerInterpreter, true)
+                    : InterpreterTuner.loadOrCalibrate(context, tfliteModel, count);
+            interpreterPool = new InterpreterPool(tfliteModel, count, config);
+
+            warmUp();
+            // Same lock as close(), so a close cannot slip in between the check and the set
+            synchronized (this) {
+                if (isClosed) {
+                    // Closed while loading in the background
+                    interpreterPool.close();
+                    return false;
                 }
+                isInitialized = true;
             }
-            
-            isInitialized = true;
+            Log.d(TAG, "Blur model ready with " + count + " interpreter(s), " + config + " each");
             return true;
             
         } catch (IOException e) {
@@ -112,54 +114,232 @@ public class BlurDetectionHelper {
         }
     }
 
+    /**
+     * Runs one inference on a blank input with every interpreter, so tensor allocation and XNNPACK
+     * setup are paid here rather than by the first real blur check
+     */
+    private void warmUp() throws InterruptedException {
+        InterpreterSlot[] slots = new InterpreterSlot[interpreterPool.size()];
+        try {
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] = interpreterPool.acquire(false);
+                if (slots[i] == null) {
+                    throw new IllegalStateException("Blur detection helper closed");
+                }
+                slots[i].warmUp();
+            }
+        } finally {
+            for (InterpreterSlot slot : slots) {
+                interpreterPool.release(slot);
+            }
+        }
+    }
+
+    /**
+     * Enable cascaded classification: the cheap, sampled Laplacian variance decides frames that are
+     * clearly blurry or clearly sharp, and the model only runs for scores inside [low, high]
+     * @param enabled false to always run the model when it is initialized
+     * @param low Laplacian variance below which a frame is blurry
+     * @param high Laplacian variance above which a frame is sharp
+     */
+    public void setCascade(boolean enabled, double low, double high) {
+        cascadeLow = Math.min(low, high);
+        cascadeHigh = Math.max(low, high);
+        cascadeEnabled = enabled;
+    }
+
+    public boolean isCascadeEnabled() {
+        return cascadeEnabled;
+    }
+
+    /**
+     * Result decided by the Laplacian stage of the cascade, or null if the score is inside the
+     * uncertainty band and the model has to decide
+     */
+    private BlurResult decideByLaplacian(double laplacianScore) {
+        if (laplacianScore < cascadeLow) {
+            return new BlurResult(true, STAGE_LAPLACIAN, laplacianScore);
+        }
+        if (laplacianScore > cascadeHigh) {
+            return new BlurResult(false, STAGE_LAPLACIAN, laplacianScore);
+        }
+        return null;
+    }
+
+    /**
+     * Borrows an interpreter from the pool
+     * @param live true for live camera frames, which are served before on-demand requests
+     */
+    private InterpreterSlot acquireSlot(boolean live) {
+        InterpreterSlot slot;
+        try {
+            slot = interpreterPool.acquire(live);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for an interpreter", e);
+        }
+        if (slot == null) {
+            throw new IllegalStateException("Blur detection helper closed");
+        }
+        return slot;
+    }
+
+    /**
+     * Runs the model on the bitmap
+     * @return true if the model classifies the image as blurry
+     */
+    private boolean classify(Bitmap bitmap, boolean live) {
+        InterpreterSlot slot = acquireSlot(live);
+        try {
+            slot.loadTile(bitmap);
+            slot.fillInput();
+            slot.run();
+            return isBlur(slot);
+        } finally {
+            interpreterPool.release(slot);
+        }
+    }
+
+    private static boolean isBlur(InterpreterSlot slot) {
+        // output[0] = blur probability, output[1] = sharp probability
+        return isBlur(slot.getOutput(0), slot.getOutput(1));
+    }
+
+    /**
+     * Label of the model outputs
+     * @return true if the confidences classify the image as blurry
+     */
+    public static boolean isBlur(double blurConfidence, double sharpConfidence) {
+        // Determine if image is blurry using TFLite confidence
+        return blurConfidence >= 0.99 || sharpConfidence < 0.1;
+    }
+
+    /**
+     * Registers the blur model in a quality engine, so it is evaluated together with the other
+     * quality models from the same converted tile. The pool stays owned by this helper.
+     * @return false if the model is not initialized
+     */
+    public boolean registerWith(QualityEngine engine) {
+        if (!isInitialized) {
+            return false;
+        }
+        engine.registerModel(QUALITY_MODEL_NAME, interpreterPool, new String[]{"blur", "sharp"},
+                scores -> scores.length < NUM_CLASSES || !isBlur(scores[0], scores[1]));
+        return true;
+    }
+
+    /**
+     * Detect blur in a YUV_420_888 camera frame using the TFLite model, sampling the model input
+     * directly from the planes
+     * @param planes planes of the frame
+     * @param region part of the frame to look at, in sensor coordinates
+     * @param rotationDegrees rotation making the frame upright
+     * @return true if the frame is blurry
+     */
+    public boolean isBlurry(ImageProxy.PlaneProxy[] planes, Rect region, int rotationDegrees) {
+        if (isInitialized) {
+            try {
+                return classify(planes, region, rotationDegrees);
+            } catch (Exception e) {
+                Log.e(TAG, "Error during TFLite inference: " + e.getMessage(), e);
+            }
+        } else {
+            Log.w(TAG, "TFLite model not initialized, falling back to Laplacian");
+        }
+        // Fallback to Laplacian algorithm on the luma plane
+        double laplacianScore = calculateLaplacianBlurScore(planes[0].getBuffer(), planes[0].getRowStride(), region);
+        return laplacianScore < 150;
+    }
+
+    private boolean classify(ImageProxy.PlaneProxy[] planes, Rect region, int rotationDegrees) {
+        InterpreterSlot slot = acquireSlot(true);
+        try {
+            slot.loadTile(planes, region, rotationDegrees);
+            slot.fillInput();
+            slot.run();
+            return isBlur(slot);
+        } finally {
+            interpreterPool.release(slot);
+        }
+    }
+
+    /**
+     * Classify a live YUV_420_888 frame, going through the Laplacian stage first when the cascade
+     * is enabled
+     * @param planes planes of the frame
+     * @param region part of the frame to look at, in sensor coordinates
+     * @param rotationDegrees rotation making the frame upright
+     */
+    public BlurResult classifyFrame(ImageProxy.PlaneProxy[] planes, Rect region, int rotationDegrees) {
+        double laplacianScore = Double.NaN;
+        if (cascadeEnabled || !isInitialized) {
+            laplacianScore = calculateLaplacianBlurScore(planes[0].getBuffer(), planes[0].getRowStride(), region);
+        }
+        if (cascadeEnabled) {
+            BlurResult decided = decideByLaplacian(laplacianScore);
+            if (decided != null) {
+                return decided;
+            }
+        }
+        if (isInitialized) {
+            try {
+                return new BlurResult(classify(planes, region, rotationDegrees), STAGE_MODEL, laplacianScore);
+            } catch (Exception e) {
+                Log.e(TAG, "Error during TFLite inference: " + e.getMessage(), e);
+            }
+        }
+        if (Double.isNaN(laplacianScore)) {
+            laplacianScore = calculateLaplacianBlurScore(planes[0].getBuffer(), planes[0].getRowStride(), region);
+        }
+        return new BlurResult(laplacianScore < 150, STAGE_LAPLACIAN, laplacianScore);
+    }
+
+    /**
+     * Same as {@link #classifyFrame(ImageProxy.PlaneProxy[], Rect, int)} for a live frame that is
+     * already a bitmap
+     */
+    public BlurResult classifyFrame(Bitmap bitmap) {
+        double laplacianScore = Double.NaN;
+        if (cascadeEnabled || !isInitialized) {
+            laplacianScore = calculateLaplacianBlurScore(bitmap);
+        }
+        if (cascadeEnabled) {
+            BlurResult decided = decideByLaplacian(laplacianScore);
+            if (decided != null) {
+                return decided;
+            }
+        }
+        if (isInitialized) {
+            try {
+                return new BlurResult(classify(bitmap, true), STAGE_MODEL, laplacianScore);
+            } catch (Exception e) {
+                Log.e(TAG, "Error during TFLite inference: " + e.getMessage(), e);
+            }
+        }
+        if (Double.isNaN(laplacianScore)) {
+            laplacianScore = calculateLaplacianBlurScore(bitmap);
+        }
+        return new BlurResult(laplacianScore < 150, STAGE_LAPLACIAN, laplacianScore);
+    }
+
     /**
      * Detect blur in image using TFLite model
      * @param bitmap Input image bitmap
      * @return Blur confidence score (0.0 = sharp, 1.0 = very blurry)
      */
     public double detectBlur(Bitmap bitmap) {
-        if (!isInitialized || tflite == null) {
+        return detectBlur(bitmap, false);
+    }
+
+    private double detectBlur(Bitmap bitmap, boolean live) {
+        if (!isInitialized) {
             Log.w(TAG, "TFLite model not initialized, falling back to Laplacian");
             return calculateLaplacianBlurScore(bitmap);
         }
 
         try {
-            // Use the original bitmap directly (no image enhancement)
-            Bitmap processedBitmap = bitmap;
-            
-            // Preprocess image for model (resize and potential enhancement)
-            inputImageBuffer.load(processedBitmap);
-            inputImageBuffer = imageProcessor.process(inputImageBuffer);
-
-            // Get tensor buffer
-            ByteBuffer tensorBuffer = inputImageBuffer.getBuffer();
-
-            // Check if we need normalization based on data types
-            ByteBuffer inferenceBuffer;
-            if (inputImageBuffer.getDataType() == DataType.UINT8 && tflite.getInputTensor(0).dataType() == DataType.FLOAT32) {
-                inferenceBuffer = normalizeImageBuffer(tensorBuffer);
-            } else if (inputImageBuffer.getDataType() == DataType.FLOAT32) {
-                // Check if values are in [0,1] range or [0,255] range
-                inferenceBuffer = checkAndNormalizeFloat32Buffer(tensorBuffer);
-            } else {
-                inferenceBuffer = tensorBuffer;
-            }
-
-            // Run inference
-            tflite.run(inferenceBuffer, outputProbabilityBuffer.getBuffer().rewind());
-
-            // Get output probabilities
-            float[] probabilities = outputProbabilityBuffer.getFloatArray();
-            
-            // probabilities[0] = blur probability, probabilities[1] = sharp probability
-            double blurConfidence = probabilities.length > 0 ? probabilities[0] : 0.0;
-            double sharpConfidence = probabilities.length > 1 ? probabilities[1] : 0.0;
-
-            // Determine if image is blurry using TFLite confidence
-            boolean isBlur = (blurConfidence >= 0.99 || sharpConfidence < 0.1);
-            
             // Return 1.0 for blur, 0.0 for sharp (to maintain double return type)
-            return isBlur ? 1.0 : 0.0;
+            return classify(bitmap, live) ? 1.0 : 0.0;
             
         } catch (Exception e) {
             Log.e(TAG, "Error during TFLite inference: " + e.getMessage(), e);
@@ -171,126 +351,155 @@ public class BlurDetectionHelper {
     }
 
     /**
-     * Check if float32 buffer needs normalization and normalize if needed
-     * @param float32Buffer Input buffer with float32 pixel values
-     * @return Normalized float32 buffer (values in [0,1] range)
+     * Luma statistics of an image, computed in the same sampled pass as the Laplacian blur score
      */
-    private ByteBuffer checkAndNormalizeFloat32Buffer(ByteBuffer float32Buffer) {
-        float32Buffer.rewind();
-        FloatBuffer floatBuffer = float32Buffer.asFloatBuffer();
-        
-        // Sample a few values to check if they're in [0,1] or [0,255] range
-        float maxSample = 0.0f;
-        int sampleCount = Math.min(100, floatBuffer.remaining());
-        
-        for (int i = 0; i < sampleCount; i++) {
-            float value = Math.abs(floatBuffer.get());
-            maxSample = Math.max(maxSample, value);
-        }
-        
-        // If max value is > 1.5, assume it's in [0,255] range and needs normalization
-        if (maxSample > 1.5f) {
-            return normalizeFloat32Buffer(float32Buffer);
-        } else {
-            float32Buffer.rewind();
-            return float32Buffer;
+    public static class LumaStats {
+        /** Laplacian variance, higher is sharper */
+        public final double laplacianScore;
+        /** Mean luma, 0-255 */
+        public final double mean;
+        /** Share of samples at or above {@link #CLIPPED_LEVEL}, e.g. glare */
+        public final double clippedRatio;
+        /** Share of samples at or below {@link #DARK_LEVEL} */
+        public final double darkRatio;
+        /** Standard deviation of the luma (RMS contrast), 0-255 */
+        public final double contrast;
+
+        public static final int CLIPPED_LEVEL = 250;
+        public static final int DARK_LEVEL = 20;
+
+        LumaStats(double laplacianScore, int[] histogram) {
+            this.laplacianScore = laplacianScore;
+            long count = 0;
+            long sum = 0;
+            long sumOfSquares = 0;
+            long clipped = 0;
+            long dark = 0;
+            for (int level = 0; level < 256; level++) {
+                long n = histogram[level];
+                count += n;
+                sum += n * level;
+                sumOfSquares += n * level * level;
+                if (level >= CLIPPED_LEVEL) clipped += n;
+                if (level <= DARK_LEVEL) dark += n;
+            }
+            if (count == 0) {
+                mean = 0;
+                clippedRatio = 0;
+                darkRatio = 0;
+                contrast = 0;
+            } else {
+                mean = (double) sum / count;
+                clippedRatio = (double) clipped / count;
+                darkRatio = (double) dark / count;
+                contrast = Math.sqrt(Math.max(0.0, (double) sumOfSquares / count - mean * mean));
+            }
         }
     }
 
     /**
-     * Normalize float32 buffer from [0,255] to [0,1]
-     * @param float32Buffer Input buffer with float32 pixel values in [0,255] range
-     * @return Normalized float32 buffer
-     */
-         private ByteBuffer normalizeFloat32Buffer(ByteBuffer float32Buffer) {
-         int pixelCount = INPUT_SIZE * INPUT_SIZE * 3;
-         ByteBuffer normalizedBuffer = ByteBuffer.allocateDirect(pixelCount * 4);
-         normalizedBuffer.order(ByteOrder.nativeOrder());
-         FloatBuffer normalizedFloats = normalizedBuffer.asFloatBuffer();
-         
-         float32Buffer.rewind();
-         FloatBuffer sourceFloats = float32Buffer.asFloatBuffer();
-         
-         while (sourceFloats.hasRemaining() && normalizedFloats.hasRemaining()) {
-             float pixelValue = sourceFloats.get();
-             float normalizedValue = pixelValue / 255.0f;
-             normalizedFloats.put(normalizedValue);
-         }
-         
-         normalizedBuffer.rewind();
-         return normalizedBuffer;
-     }
-
-    /**
-     * Normalize image buffer from uint8 [0,255] to float32 [0,1]
-     * @param uint8Buffer Input buffer with uint8 pixel values
-     * @return Normalized float32 buffer
+     * Fallback Laplacian blur detection (from original implementation)
      */
-         private ByteBuffer normalizeImageBuffer(ByteBuffer uint8Buffer) {
-         // Create float32 buffer with proper size and byte order
-         int pixelCount = INPUT_SIZE * INPUT_SIZE * 3;
-         ByteBuffer float32Buffer = ByteBuffer.allocateDirect(pixelCount * 4); // 4 bytes per float
-         float32Buffer.order(ByteOrder.nativeOrder());
-         FloatBuffer floatBuffer = float32Buffer.asFloatBuffer();
-         
-         // Reset uint8 buffer position
-         uint8Buffer.rewind();
-         
-         // Convert each uint8 pixel to normalized float32
-         while (uint8Buffer.hasRemaining() && floatBuffer.hasRemaining()) {
-             int pixelValue = uint8Buffer.get() & 0xFF; // Convert to unsigned int
-             float normalizedValue = pixelValue / 255.0f; // Normalize to [0,1]
-             floatBuffer.put(normalizedValue);
-         }
-         
-         float32Buffer.rewind();
-         return float32Buffer;
-     }
+    public static double calculateLaplacianBlurScore(Bitmap bitmap) {
+        if (bitmap == null) return 0.0;
+        return analyzeLuma(bitmap).laplacianScore;
+    }
 
     /**
-     * Fallback Laplacian blur detection (from original implementation)
+     * Laplacian blur score plus exposure statistics of a bitmap.
+     * Reads the bitmap three rows at a time and works on integer luma (x1000), so no full-frame
+     * int[] or double[] copies are made. The luma histogram is built from the same samples.
      */
-    private double calculateLaplacianBlurScore(Bitmap bitmap) {
-        if (bitmap == null) return 0.0;
-        
+    public static LumaStats analyzeLuma(Bitmap bitmap) {
         int width = bitmap.getWidth();
         int height = bitmap.getHeight();
-        
-        // Convert to grayscale for better blur detection
-        int[] pixels = new int[width * height];
-        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
-        
-        double[] grayscale = new double[width * height];
-        for (int i = 0; i < pixels.length; i++) {
-            int pixel = pixels[i];
-            int r = (pixel >> 16) & 0xFF;
-            int g = (pixel >> 8) & 0xFF;
-            int b = pixel & 0xFF;
-            grayscale[i] = 0.299 * r + 0.587 * g + 0.114 * b;
-        }
-        
-        // Apply Laplacian kernel for edge detection
-        double variance = 0.0;
+        int step = LAPLACIAN_STEP;
+        int[] histogram = new int[256];
+        if (width <= 2 * step || height <= 2 * step) return new LumaStats(0.0, histogram);
+
+        int[] pixels = new int[width];
+        int[][] rows = new int[3][width];
+        long variance = 0;
         int count = 0;
-        
+
         // Sample every 4th pixel for performance
-        int step = 4;
         for (int y = step; y < height - step; y += step) {
+            for (int k = 0; k < 3; k++) {
+                bitmap.getPixels(pixels, 0, width, 0, y - 1 + k, width, 1);
+                int[] gray = rows[k];
+                for (int x = 0; x < width; x++) {
+                    int pixel = pixels[x];
+                    // 0.299 R + 0.587 G + 0.114 B, scaled by 1000
+                    gray[x] = 299 * ((pixel >> 16) & 0xFF) + 587 * ((pixel >> 8) & 0xFF) + 114 * (pixel & 0xFF);
+                }
+            }
+            int[] above = rows[0];
+            int[] center = rows[1];
+            int[] below = rows[2];
             for (int x = step; x < width - step; x += step) {
-                int idx = y * width + x;
-                
                 // 3x3 Laplacian kernel
-                double laplacian = 
-                    -grayscale[idx - width - 1] - grayscale[idx - width] - grayscale[idx - width + 1] +
-                    -grayscale[idx - 1] + 8 * grayscale[idx] - grayscale[idx + 1] +
-                    -grayscale[idx + width - 1] - grayscale[idx + width] - grayscale[idx + width + 1];
-                
+                long laplacian = 8L * center[x]
+                        - above[x - 1] - above[x] - above[x + 1]
+                        - center[x - 1] - center[x + 1]
+                        - below[x - 1] - below[x] - below[x + 1];
                 variance += laplacian * laplacian;
+                histogram[(center[x] + 500) / 1000]++;
                 count++;
             }
         }
-        
-        return count > 0 ? variance / count : 0.0;
+
+        return new LumaStats(count > 0 ? (double) variance / count / 1000000.0 : 0.0, histogram);
+    }
+
+    /**
+     * Laplacian blur score computed straight from the luma (Y) plane of a camera frame.
+     * @see #analyzeLuma(ByteBuffer, int, Rect)
+     */
+    public static double calculateLaplacianBlurScore(ByteBuffer yBuffer, int rowStride, Rect region) {
+        return analyzeLuma(yBuffer, rowStride, region).laplacianScore;
+    }
+
+    /**
+     * Laplacian blur score plus exposure statistics read straight from the luma (Y) plane of a
+     * camera frame. Same kernel and sampling as {@link #analyzeLuma(Bitmap)}, but only the three
+     * rows around each sampled row are copied out of the plane, and everything is integer math.
+     * @param yBuffer Y plane buffer, index 0 being the first pixel
+     * @param rowStride row stride of the Y plane
+     * @param region part of the frame to analyze, in plane coordinates
+     */
+    public static LumaStats analyzeLuma(ByteBuffer yBuffer, int rowStride, Rect region) {
+        int width = region.width();
+        int height = region.height();
+        int step = LAPLACIAN_STEP;
+        int[] histogram = new int[256];
+        if (width <= 2 * step || height <= 2 * step) return new LumaStats(0.0, histogram);
+
+        ByteBuffer buffer = yBuffer.duplicate();
+        byte[][] rows = new byte[3][width];
+        long variance = 0;
+        int count = 0;
+
+        for (int y = step; y < height - step; y += step) {
+            for (int k = 0; k < 3; k++) {
+                buffer.position((region.top + y - 1 + k) * rowStride + region.left);
+                buffer.get(rows[k], 0, width);
+            }
+            byte[] above = rows[0];
+            byte[] center = rows[1];
+            byte[] below = rows[2];
+            for (int x = step; x < width - step; x += step) {
+                int luma = center[x] & 0xFF;
+                int laplacian = 8 * luma
+                        - (above[x - 1] & 0xFF) - (above[x] & 0xFF) - (above[x + 1] & 0xFF)
+                        - (center[x - 1] & 0xFF) - (center[x + 1] & 0xFF)
+                        - (below[x - 1] & 0xFF) - (below[x] & 0xFF) - (below[x + 1] & 0xFF);
+                variance += (long) laplacian * laplacian;
+                histogram[luma]++;
+                count++;
+            }
+        }
+
+        return new LumaStats(count > 0 ? (double) variance / count : 0.0, histogram);
     }
 
     /**
@@ -301,7 +510,7 @@ public class BlurDetectionHelper {
     public java.util.Map<String, Object> detectBlurWithConfidence(Bitmap bitmap) {
         java.util.Map<String, Object> result = new java.util.HashMap<>();
         
-        if (!isInitialized || tflite == null) {
+        if (!isInitialized) {
             Log.w(TAG, "TFLite model not initialized, falling back to Laplacian");
             double laplacianScore = calculateLaplacianBlurScore(bitmap);
             boolean isBlur = laplacianScore < 150;
@@ -316,39 +525,22 @@ public class BlurDetectionHelper {
         }
 
         try {
-            // Use the original bitmap directly (no image enhancement)
-            Bitmap processedBitmap = bitmap;
-            
-            // Preprocess image for model (resize and potential enhancement)
-            inputImageBuffer.load(processedBitmap);
-            inputImageBuffer = imageProcessor.process(inputImageBuffer);
-
-            // Get tensor buffer
-            ByteBuffer tensorBuffer = inputImageBuffer.getBuffer();
-
-            // Check if we need normalization based on data types
-            ByteBuffer inferenceBuffer;
-            if (inputImageBuffer.getDataType() == DataType.UINT8 && tflite.getInputTensor(0).dataType() == DataType.FLOAT32) {
-                inferenceBuffer = normalizeImageBuffer(tensorBuffer);
-            } else if (inputImageBuffer.getDataType() == DataType.FLOAT32) {
-                // Check if values are in [0,1] range or [0,255] range
-                inferenceBuffer = checkAndNormalizeFloat32Buffer(tensorBuffer);
-            } else {
-                inferenceBuffer = tensorBuffer;
+            double blurConfidence;
+            double sharpConfidence;
+            InterpreterSlot slot = acquireSlot(false);
+            try {
+                slot.loadTile(bitmap);
+                slot.fillInput();
+                slot.run();
+                // output[0] = blur probability, output[1] = sharp probability
+                blurConfidence = slot.getOutput(0);
+                sharpConfidence = slot.getOutput(1);
+            } finally {
+                interpreterPool.release(slot);
             }
 
-            // Run inference
-            tflite.run(inferenceBuffer, outputProbabilityBuffer.getBuffer().rewind());
-
-            // Get output probabilities
-            float[] probabilities = outputProbabilityBuffer.getFloatArray();
-            
-            // probabilities[0] = blur probability, probabilities[1] = sharp probability
-            double blurConfidence = probabilities.length > 0 ? probabilities[0] : 0.0;
-            double sharpConfidence = probabilities.length > 1 ? probabilities[1] : 0.0;
-
             // Determine if image is blurry using TFLite confidence
-            boolean isBlur = (blurConfidence >= 0.99 || sharpConfidence < 0.1);
+            boolean isBlur = isBlur(blurConfidence, sharpConfidence);
             
             Log.d(TAG, String.format("TFLite Blur Detection with Confidence - Blur: %.6f, Sharp: %.6f, Label: %s",
                     blurConfidence, sharpConfidence, isBlur ? "blur" : "sharp"));
@@ -374,13 +566,61 @@ public class BlurDetectionHelper {
         }
     }
 
+    /**
+     * Detect blur in several images, running one inference per batch of up to {@link InterpreterSlot#MAX_BATCH_SIZE} images
+     * instead of one per image. Falls back to one inference per image if the model input cannot be
+     * resized, and to the Laplacian algorithm if the model is not initialized.
+     * @param bitmaps Input images
+     * @return one map per image, like {@link #detectBlurWithConfidence(Bitmap)}
+     */
+    public List<java.util.Map<String, Object>> detectBlurBatch(List<Bitmap> bitmaps) {
+        List<java.util.Map<String, Object>> results = new ArrayList<>(bitmaps.size());
+        if (!isInitialized) {
+            for (Bitmap bitmap : bitmaps) {
+                results.add(detectBlurWithConfidence(bitmap));
+            }
+            return results;
+        }
+
+        for (int start = 0; start < bitmaps.size(); start += InterpreterSlot.MAX_BATCH_SIZE) {
+            List<Bitmap> batch = bitmaps.subList(start, Math.min(bitmaps.size(), start + InterpreterSlot.MAX_BATCH_SIZE));
+            float[][] outputs = new float[batch.size()][NUM_CLASSES];
+            try {
+                InterpreterSlot slot = acquireSlot(false);
+                try {
+                    slot.runBatch(batch, outputs);
+                } finally {
+                    interpreterPool.release(slot);
+                }
+            } catch (Exception e) {
+                Log.w(TAG, "Batched inference failed, classifying images one by one: " + e.getMessage());
+                for (Bitmap bitmap : batch) {
+                    results.add(detectBlurWithConfidence(bitmap));
+                }
+                continue;
+            }
+            for (float[] output : outputs) {
+                // output[0] = blur probability, output[1] = sharp probability
+                double blurConfidence = output[0];
+                double sharpConfidence = output[1];
+                java.util.Map<String, Object> result = new java.util.HashMap<>();
+                result.put("isBlur", isBlur(blurConfidence, sharpConfidence));
+                result.put("blurConfidence", blurConfidence);
+                result.put("sharpConfidence", sharpConfidence);
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
     /**
      * Check if image is blurry
+     * Used for live frames, which take priority over on-demand requests
      * @param bitmap Input image
      * @return true if image is blurry, false if sharp
      */
     public boolean isBlurry(Bitmap bitmap) {
-        double result = detectBlur(bitmap);
+        double result = detectBlur(bitmap, true);
         return result == 1.0;
     }
 
@@ -398,12 +638,24 @@ public class BlurDetectionHelper {
     /**
      * Clean up resources
      */
-    public void close() {
-        if (tflite != null) {
-            tflite.close();
-            tflite = null;
-        }
+    public synchronized void close() {
+        isClosed = true;
         isInitialized = false;
+        if (interpreterPool != null) {
+            interpreterPool.close();
+        }
+    }
+
+    /**
+     * Width and height of the model input: the center area of an image the model looks at
+     * @return null until the model is initialized
+     */
+    public int[] getInputSize() {
+        if (!isInitialized) {
+            return null;
+        }
+        InterpreterSlot slot = interpreterPool.peek();
+        return new int[]{slot.getInputWidth(), slot.getInputHeight()};
     }
 
     /**
@@ -414,4 +666,4 @@ public class BlurDetectionHelper {
     }
 
 
-} 
\ No newline at end of file
+}
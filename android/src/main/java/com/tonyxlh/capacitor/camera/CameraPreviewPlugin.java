@@ -9,15 +9,21 @@ import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
 import android.graphics.Color;
+import android.graphics.ImageFormat;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraManager;
 import android.net.Uri;
 import android.os.Build;
+import android.os.ParcelFileDescriptor;
 import android.provider.MediaStore;
 import android.util.Base64;
+import android.util.Base64OutputStream;
 import android.util.Log;
 import android.util.Size;
 import android.util.SizeF;
@@ -73,16 +79,21 @@ import com.getcapacitor.annotation.PermissionCallback;
 import com.google.common.util.concurrent.ListenableFuture;
 
 import org.json.JSONException;
+import org.json.JSONObject;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -98,6 +109,17 @@ public class CameraPreviewPlugin extends Plugin {
     // Permission alias constants
     static final String CAMERA = "camera";
     static final String MICROPHONE = "microphone";
+    // Shortest long side a file is subsampled to for the Laplacian blur check
+    private static final int BLUR_DECODE_MIN_LENGTH = 1024;
+    // How takeSnapshot returns the image
+    private static final String RESULT_TYPE_BASE64 = "base64";
+    private static final String RESULT_TYPE_URL = "url";
+    private static final String RESULT_TYPE_FILE = "file";
+    // Default and largest chunk of readRecordingChunk, also the read block of encodeBase64
+    private static final int RECORDING_CHUNK_SIZE = 1024 * 1024;
+    private static final int MAX_RECORDING_CHUNK_SIZE = 8 * 1024 * 1024;
+    // Largest recording stopRecording returns as base64, bigger ones are read in chunks or by URL
+    private static final int MAX_BASE64_RECORDING_SIZE = 16 * 1024 * 1024;
     private String callbackID;
     private PreviewView previewView;
     private ListenableFuture<ProcessCameraProvider> cameraProviderFuture;
@@ -114,16 +136,37 @@ public class CameraPreviewPlugin extends Plugin {
     private PluginCall stopRecordingCall;
     private PluginCall takeSnapshotCall;
     private PluginCall saveFrameCall;
+    private PluginCall frameQualityCall;
+    private FrameServer frameServer;
+    // Writes file and URL snapshots off the analyzer thread
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    // Reads recordings, kept apart from ioExecutor so long videos don't hold up snapshots
+    private final ExecutorService recordingIoExecutor = Executors.newSingleThreadExecutor();
+    // URIs of the recordings returned by stopRecording, the only sources readRecordingChunk reads
+    private final Set<String> recordingUris = ConcurrentHashMap.newKeySet();
+    // Target analysis resolution (landscape), 0 lets CameraX pick it from the 16:9 aspect ratio
     private int desiredWidth = 1920;
     private int desiredHeight = 1080;
+    // Frames arriving sooner than 1/maxAnalysisFps after the last analyzed one are dropped, 0 means no limit
+    private int maxAnalysisFps = 0;
+    private long lastAnalyzedTimestamp = 0;
     private CameraState previousCameraStatus;
     private ScanRegion scanRegion;
+    // Ask CameraX for RGBA_8888 analysis frames instead of YUV_420_888
+    private boolean rgbaAnalysis = false;
+    // Reusable conversion buffers for the analyzer, cleared whenever the use cases are rebuilt
+    private final FrameBufferPool frameBufferPool = new FrameBufferPool();
 
     static public Bitmap frameTaken;
 
     // Store the desired JPEG quality, set during initialization
     private int desiredJpegQuality = 95; // Default to high quality
     private BlurDetectionHelper blurDetectionHelper; // TFLite blur detection
+    // Guards replacing the blur helper against its background initialization
+    private final Object blurHelperLock = new Object();
+    private final QualityEngine qualityEngine = new QualityEngine(); // Additional image-quality models
+    // Loads the blur and quality models one at a time, so device calibrations do not skew each other
+    private final ExecutorService modelExecutor = Executors.newSingleThreadExecutor();
 
     private boolean isUsingWide = false;
     private String wideAngleCameraId;
@@ -142,6 +185,13 @@ public class CameraPreviewPlugin extends Plugin {
                     Log.d("Camera", "Initialized with JPEG quality: " + desiredJpegQuality);
                 }
 
+                // Striped multi-threaded frame conversion, off by default on low-end devices
+                boolean parallelConversion = call.getBoolean("parallelConversion",
+                        !ParallelWorkers.isLowEndDevice(getContext()));
+                ParallelWorkers.setEnabled(parallelConversion);
+                Log.d("Camera", "Parallel frame conversion: " + parallelConversion);
+                readAnalysisOptions(call);
+
                 previewView = new PreviewView(getContext());
                 previewView.setScaleType(PreviewView.ScaleType.FIT_CENTER);
                 FrameLayout.LayoutParams cameraPreviewParams = new FrameLayout.LayoutParams(
@@ -155,9 +205,39 @@ public class CameraPreviewPlugin extends Plugin {
                 cameraProviderFuture = ProcessCameraProvider.getInstance(getContext());
 
                 // Initialize TFLite blur detection helper
-                blurDetectionHelper = new BlurDetectionHelper();
-                boolean tfliteInitialized = blurDetectionHelper.initialize(getContext());
-                Log.d("Camera", "TFLite blur detection initialized: " + tfliteInitialized);
+                // Interpreters running at the same time and threads for each one, 0 meaning automatic
+                int blurInterpreters = call.getInt("blurInterpreters", 2);
+                int blurInterpreterThreads = call.getInt("blurInterpreterThreads", 0);
+                BlurDetectionHelper helper = new BlurDetectionHelper();
+                // Cascade: the model only runs when the Laplacian variance falls inside [low, high]
+                helper.setCascade(call.getBoolean("blurCascade", false),
+                        call.getDouble("blurCascadeLow", 50.0), call.getDouble("blurCascadeHigh", 300.0));
+                synchronized (blurHelperLock) {
+                    if (blurDetectionHelper != null) {
+                        qualityEngine.unloadModel(BlurDetectionHelper.QUALITY_MODEL_NAME);
+                        blurDetectionHelper.close();
+                    }
+                    blurDetectionHelper = helper;
+                }
+                // Load and warm up the model off the UI thread, in parallel with the camera provider.
+                // Blur checks use the Laplacian fallback until it is ready.
+                modelExecutor.execute(() -> {
+                    boolean tfliteInitialized = helper.initialize(getContext(), blurInterpreters, blurInterpreterThreads);
+                    Log.d("Camera", "TFLite blur detection initialized: " + tfliteInitialized);
+                    synchronized (blurHelperLock) {
+                        if (helper != blurDetectionHelper) {
+                            // Replaced by a later initialize, which reports its own model
+                            return;
+                        }
+                        if (tfliteInitialized) {
+                            // Evaluated with the other quality models from the same converted tile
+                            helper.registerWith(qualityEngine);
+                        }
+                    }
+                    JSObject readyResult = new JSObject();
+                    readyResult.put("ready", tfliteInitialized);
+                    notifyListeners("onBlurModelReady", readyResult);
+                });
 
                 cameraProviderFuture.addListener(() -> {
                     try {
@@ -291,6 +371,9 @@ public class CameraPreviewPlugin extends Plugin {
 
 
     private void setupUseCases(boolean enableVideo) {
+        // The analysis resolution may change, drop buffers sized for the previous one
+        frameBufferPool.clear();
+
         // Auto-detect maximum resolution for better zoom quality
         Size resolution = getOptimalResolution();
 
@@ -308,13 +391,30 @@ public class CameraPreviewPlugin extends Plugin {
 
         // Enhanced ImageAnalysis setup
         ImageAnalysis.Builder imageAnalysisBuilder = new ImageAnalysis.Builder();
-//        if (resolution != null) {
-//            imageAnalysisBuilder.setTargetResolution(resolution);
-//        }
         imageAnalysisBuilder.setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
                 .setImageQueueDepth(1); // Optimize for latest frame
 
-        imageAnalysisBuilder.setTargetAspectRatio(AspectRatio.RATIO_16_9);
+        // Analysis resolution is independent from preview/capture so frame processing stays cheap
+        if (desiredWidth > 0 && desiredHeight > 0) {
+            int orientation = getContext().getResources().getConfiguration().orientation;
+            Size analysisResolution = orientation == Configuration.ORIENTATION_PORTRAIT
+                    ? new Size(desiredHeight, desiredWidth)
+                    : new Size(desiredWidth, desiredHeight);
+            imageAnalysisBuilder.setTargetResolution(analysisResolution);
+            Log.d("Camera", "Using analysis resolution: " + analysisResolution.getWidth() + "x" + analysisResolution.getHeight());
+        } else {
+            imageAnalysisBuilder.setTargetAspectRatio(AspectRatio.RATIO_16_9);
+        }
+        lastAnalyzedTimestamp = 0;
+
+        if (rgbaAnalysis) {
+            try {
+                // Let CameraX do the color conversion, frames are then copied straight into a bitmap
+                imageAnalysisBuilder.setOutputImageFormat(ImageAnalysis.OUTPUT_IMAGE_FORMAT_RGBA_8888);
+            } catch (Exception e) {
+                Log.w("Camera", "RGBA analysis output not supported, using YUV: " + e.getMessage());
+            }
+        }
 
         imageAnalysis = imageAnalysisBuilder.build();
 
@@ -322,48 +422,104 @@ public class CameraPreviewPlugin extends Plugin {
         imageAnalysis.setAnalyzer(exec, new ImageAnalysis.Analyzer() {
             @Override
             public void analyze(@NonNull ImageProxy image) {
+                if (exceedsAnalysisFpsBudget(image)) {
+                    image.close();
+                    return;
+                }
+                if (frameQualityCall != null) {
+                    try {
+                        Rect cropRect = null;
+                        if (scanRegion != null) {
+                            cropRect = scanRegion.toSensorRect(image.getWidth(), image.getHeight(),
+                                    image.getImageInfo().getRotationDegrees());
+                        }
+                        frameQualityCall.resolve(analyzeLuma(image, cropRect, null));
+                    } catch (Exception e) {
+                        frameQualityCall.reject("Failed to analyze frame: " + e.getMessage());
+                    } finally {
+                        frameQualityCall = null;
+                    }
+                }
                 if (takeSnapshotCall != null || saveFrameCall != null) {
-                    @SuppressLint("UnsafeOptInUsageError")
-                    Bitmap bitmap = BitmapUtils.getBitmap(image);
+                    // Crop in the YUV domain so only the scan region gets color converted
+                    Rect cropRect = null;
                     if (scanRegion != null) {
-                        int left, top, width, height;
-                        if (scanRegion.measuredByPercentage == 0) {
-                            left = scanRegion.left;
-                            top = scanRegion.top;
-                            width = scanRegion.right - scanRegion.left;
-                            height = scanRegion.bottom - scanRegion.top;
-                        } else {
-                            left = (int) ((double) scanRegion.left / 100 * bitmap.getWidth());
-                            top = (int) ((double) scanRegion.top / 100 * bitmap.getHeight());
-                            width = (int) ((double) scanRegion.right / 100 * bitmap.getWidth() - left);
-                            height = (int) ((double) scanRegion.bottom / 100 * bitmap.getHeight() - top);
-                        }
-                        bitmap = Bitmap.createBitmap(bitmap, left, top, width, height, null, false);
+                        cropRect = scanRegion.toSensorRect(image.getWidth(), image.getHeight(),
+                                image.getImageInfo().getRotationDegrees());
+                    }
+                    int regionWidth = cropRect != null ? cropRect.width() : image.getWidth();
+                    int regionHeight = cropRect != null ? cropRect.height() : image.getHeight();
+                    // saveFrame keeps the full resolution, snapshots may be downscaled while converting
+                    int snapshotStep = takeSnapshotCall != null ? getSnapshotSampleStep(takeSnapshotCall, regionWidth, regionHeight) : 1;
+                    Bitmap frameBitmap = null;
+                    if (saveFrameCall != null || snapshotStep == 1) {
+                        frameBitmap = convertFrame(image, cropRect, 1);
                     }
                     if (takeSnapshotCall != null) {
-                        int desiredQuality = 85;
-                        if (takeSnapshotCall.hasOption("quality")) {
-                            desiredQuality = takeSnapshotCall.getInt("quality");
-                        }
-                        String base64 = bitmap2Base64(bitmap, desiredQuality);
-                        JSObject result = new JSObject();
-                        result.put("base64", base64);
-
-                        // Only detect blur if checkBlur option is true
-                        boolean shouldCheckBlur = takeSnapshotCall.getBoolean("checkBlur", false);
-                        if (shouldCheckBlur) {
-                            boolean isBlur = calculateBlurResult(bitmap);
-                            result.put("isBlur", isBlur);
-                            Log.d("Camera", "Blur detection - Label: " + (isBlur ? "blur" : "sharp"));
-                        } else {
-                            Log.d("Camera", "Blur detection disabled for performance");
-                        }
+                        try {
+                            Bitmap bitmap = snapshotStep == 1 ? frameBitmap : convertFrame(image, cropRect, snapshotStep);
+                            int desiredQuality = 85;
+                            if (takeSnapshotCall.hasOption("quality")) {
+                                desiredQuality = takeSnapshotCall.getInt("quality");
+                            }
+                            JSObject result = new JSObject();
+                            if (takeSnapshotCall.hasOption("maxLength") || takeSnapshotCall.hasOption("scale")) {
+                                result.put("scaleRatio", 1.0 / snapshotStep);
+                            }
+
+                            boolean shouldCheckQuality = takeSnapshotCall.getBoolean("checkQuality", false) && qualityEngine.hasModels();
+                            boolean shouldCheckBlur = takeSnapshotCall.getBoolean("checkBlur", false);
+                            boolean includeFrameQuality = takeSnapshotCall.getBoolean("includeFrameQuality", false);
+                            // YUV frames are measured on their full resolution planes. RGBA frames are measured on a
+                            // bitmap, which must be the full resolution frame as well rather than the downscaled
+                            // snapshot, so verdicts and statistics don't depend on maxLength or scale
+                            Bitmap checkBitmap = bitmap;
+                            if (snapshotStep > 1 && image.getFormat() != ImageFormat.YUV_420_888
+                                    && (shouldCheckQuality || shouldCheckBlur || includeFrameQuality)) {
+                                checkBitmap = frameBitmap != null ? frameBitmap : convertFrame(image, cropRect, 1);
+                                if (checkBitmap == null) {
+                                    throw new IllegalStateException("Frame conversion failed");
+                                }
+                            }
 
-                        takeSnapshotCall.resolve(result);
-                        takeSnapshotCall = null;
+                            // Quality models, the blur model among them, share one conversion of the frame
+                            List<QualityEngine.ModelResult> qualityResults = null;
+                            if (shouldCheckQuality) {
+                                qualityResults = evaluateQuality(image, cropRect, checkBitmap);
+                                result.put("quality", toQualityResult(qualityResults));
+                            }
+
+                            // Only detect blur if checkBlur option is true
+                            if (shouldCheckBlur) {
+                                QualityEngine.ModelResult blurModelResult = qualityResults != null
+                                        ? QualityEngine.find(qualityResults, BlurDetectionHelper.QUALITY_MODEL_NAME) : null;
+                                // Reuse the blur model verdict of the quality pass rather than converting the frame again
+                                BlurDetectionHelper.BlurResult blurResult = blurModelResult != null
+                                        ? new BlurDetectionHelper.BlurResult(!blurModelResult.pass, BlurDetectionHelper.STAGE_MODEL, Double.NaN)
+                                        : calculateBlurResult(image, cropRect, checkBitmap);
+                                boolean isBlur = blurResult.isBlur;
+                                result.put("isBlur", isBlur);
+                                result.put("blurStage", blurResult.stage);
+                                Log.d("Camera", "Blur detection - Label: " + (isBlur ? "blur" : "sharp") + ", stage: " + blurResult.stage);
+                            } else {
+                                Log.d("Camera", "Blur detection disabled for performance");
+                            }
+                            if (includeFrameQuality) {
+                                result.put("frameQuality", analyzeLuma(image, cropRect, checkBitmap));
+                            }
+                            if (checkBitmap != bitmap && checkBitmap != frameBitmap) {
+                                checkBitmap.recycle();
+                            }
+
+                            resolveSnapshot(takeSnapshotCall, result, bitmap, desiredQuality);
+                            takeSnapshotCall = null;
+                        } catch (Exception e) {
+                            takeSnapshotCall.reject("Failed to take snapshot: " + e.getMessage());
+                            takeSnapshotCall = null;
+                        }
                     }
                     if (saveFrameCall != null) {
-                        frameTaken = bitmap;
+                        frameTaken = frameBitmap;
                         JSObject result = new JSObject();
                         result.put("success", true);
                         saveFrameCall.resolve(result);
@@ -412,6 +568,58 @@ public class CameraPreviewPlugin extends Plugin {
         }
     }
 
+    @SuppressLint("UnsafeOptInUsageError")
+    private Bitmap convertFrame(ImageProxy image, Rect cropRect, int sampleStep) {
+        if (image.getFormat() == PixelFormat.RGBA_8888) {
+            return BitmapUtils.getBitmapFromRgba(image, cropRect, false, false, sampleStep, frameBufferPool);
+        }
+        // YUV frames, also used when RGBA output was requested but is not supported
+        return BitmapUtils.getBitmap(image, cropRect, false, false, sampleStep, frameBufferPool);
+    }
+
+    private void readAnalysisOptions(PluginCall call) {
+        if (call.hasOption("analysisFormat")) {
+            rgbaAnalysis = "RGBA".equalsIgnoreCase(call.getString("analysisFormat"));
+            Log.d("Camera", "Analysis output format: " + (rgbaAnalysis ? "RGBA_8888" : "YUV_420_888"));
+        }
+        // Explicit analysis resolution, independent from preview and still capture
+        if (call.hasOption("analysisWidth") || call.hasOption("analysisHeight")) {
+            desiredWidth = Math.max(0, call.getInt("analysisWidth", desiredWidth));
+            desiredHeight = Math.max(0, call.getInt("analysisHeight", desiredHeight));
+            Log.d("Camera", "Analysis resolution: " + desiredWidth + "x" + desiredHeight);
+        }
+        if (call.hasOption("maxAnalysisFps")) {
+            maxAnalysisFps = Math.max(0, call.getInt("maxAnalysisFps"));
+            Log.d("Camera", "Max analysis fps: " + maxAnalysisFps);
+        }
+    }
+
+    /**
+     * Drops frames that arrive before the analysis fps budget allows another one
+     * @return true if the frame should be skipped
+     */
+    private boolean exceedsAnalysisFpsBudget(ImageProxy image) {
+        if (maxAnalysisFps <= 0) {
+            return false;
+        }
+        long timestamp = image.getImageInfo().getTimestamp();
+        if (lastAnalyzedTimestamp != 0 && timestamp - lastAnalyzedTimestamp < 1000000000L / maxAnalysisFps) {
+            return true;
+        }
+        lastAnalyzedTimestamp = timestamp;
+        return false;
+    }
+
+    /**
+     * Downscale factor for a snapshot, from its maxLength (longest side in pixels) or scale option.
+     * Subsampling happens while converting, so no full resolution bitmap is produced.
+     */
+    private int getSnapshotSampleStep(PluginCall call, int regionWidth, int regionHeight) {
+        int maxLength = call.getInt("maxLength", 0);
+        double scale = call.getDouble("scale", 0.0);
+        return BitmapUtils.getSampleStep(regionWidth, regionHeight, maxLength, scale);
+    }
+
     /**
      * Get the optimal (maximum) resolution supported by the device for better zoom quality
      * Uses high-quality resolution options with CameraX auto-selection fallback
@@ -583,6 +791,7 @@ public class CameraPreviewPlugin extends Plugin {
                     useCaseGroup = null;
                     recorder = null;
                     currentRecording = null;
+                    frameBufferPool.clear();
                     Log.d("Camera", "Camera stopped and all references cleared.");
                     call.resolve();
                 } catch (Exception e) {
@@ -1133,29 +1342,38 @@ public class CameraPreviewPlugin extends Plugin {
         getActivity().runOnUiThread(new Runnable() {
             @RequiresApi(api = Build.VERSION_CODES.P)
             public void run() {
-                if (call.hasOption("resolution")) {
+                if (call.hasOption("resolution") || call.hasOption("analysisFormat")
+                        || call.hasOption("analysisWidth") || call.hasOption("analysisHeight")
+                        || call.hasOption("maxAnalysisFps")) {
                     try {
-                        int res = call.getInt("resolution");
-                        int width = 1280;
-                        int height = 720;
-                        if (res == 1) {
-                            width = 640;
-                            height = 480;
-                        } else if (res == 2) {
-                            width = 1280;
-                            height = 720;
-                        } else if (res == 3) {
-                            width = 1920;
-                            height = 1080;
-                        } else if (res == 4) {
-                            width = 2560;
-                            height = 1440;
-                        } else if (res == 5) {
-                            width = 3840;
-                            height = 2160;
+                        if (call.hasOption("resolution")) {
+                            int res = call.getInt("resolution");
+                            int width = 1280;
+                            int height = 720;
+                            if (res == 0) {
+                                // RESOLUTION_AUTO
+                                width = 0;
+                                height = 0;
+                            } else if (res == 1) {
+                                width = 640;
+                                height = 480;
+                            } else if (res == 2) {
+                                width = 1280;
+                                height = 720;
+                            } else if (res == 3) {
+                                width = 1920;
+                                height = 1080;
+                            } else if (res == 4) {
+                                width = 2560;
+                                height = 1440;
+                            } else if (res == 5) {
+                                width = 3840;
+                                height = 2160;
+                            }
+                            desiredHeight = height;
+                            desiredWidth = width;
                         }
-                        desiredHeight = height;
-                        desiredWidth = width;
+                        readAnalysisOptions(call);
                         CameraState.Type status = null;
                         if (camera != null) {
                             status = camera.getCameraInfo().getCameraState().getValue().getType();
@@ -1184,6 +1402,16 @@ public class CameraPreviewPlugin extends Plugin {
     }
 
 
+    /**
+     * Whether the TFLite blur model is loaded and warmed up; until then blur checks use the Laplacian fallback
+     */
+    @PluginMethod
+    public void isBlurModelReady(PluginCall call) {
+        JSObject result = new JSObject();
+        result.put("ready", blurDetectionHelper != null && blurDetectionHelper.isInitialized());
+        call.resolve(result);
+    }
+
     @SuppressLint("RestrictedApi")
     @PluginMethod
     public void getResolution(PluginCall call) {
@@ -1216,6 +1444,11 @@ public class CameraPreviewPlugin extends Plugin {
             return;
         }
 
+        if (RESULT_TYPE_URL.equals(call.getString("resultType")) && !isFrameServerRunning()) {
+            call.reject("Frame server is not running.");
+            return;
+        }
+
         try {
             call.setKeepAlive(true);
             takeSnapshotCall = call;
@@ -1224,6 +1457,16 @@ public class CameraPreviewPlugin extends Plugin {
         }
     }
 
+    @PluginMethod
+    public void getFrameQuality(PluginCall call) {
+        if (camera == null) {
+            call.reject("Camera not initialized.");
+            return;
+        }
+        call.setKeepAlive(true);
+        frameQualityCall = call;
+    }
+
     @PluginMethod
     public void saveFrame(PluginCall call) {
         call.setKeepAlive(true);
@@ -1236,6 +1479,10 @@ public class CameraPreviewPlugin extends Plugin {
             call.reject("Camera not initialized.");
             return;
         }
+        if (call.getBoolean("includeUrl", false) && !isFrameServerRunning()) {
+            call.reject("Frame server is not running.");
+            return;
+        }
         getActivity().runOnUiThread(new Runnable() {
             @RequiresApi(api = Build.VERSION_CODES.P)
             public void run() {
@@ -1270,6 +1517,14 @@ public class CameraPreviewPlugin extends Plugin {
                                     String base64 = Base64.encodeToString(convertFileToByteArray(file), Base64.DEFAULT);
                                     result.put("base64", base64);
                                 }
+                                if (call.getBoolean("includeUrl", false)) {
+                                    try {
+                                        result.put("url", frameServer.serveFile(file, "image/jpeg", false));
+                                    } catch (Exception e) {
+                                        call.reject("Failed to serve photo: " + e.getMessage());
+                                        return;
+                                    }
+                                }
                                 result.put("path", file.getAbsolutePath());
                                 call.resolve(result);
                             }
@@ -1334,21 +1589,38 @@ public class CameraPreviewPlugin extends Plugin {
                                 String path = uri.getPath();
 
                                 if (stopRecordingCall != null) {
+                                    PluginCall call = stopRecordingCall;
+                                    stopRecordingCall = null;
+                                    recorder = null;
                                     JSObject result = new JSObject();
-                                    if (stopRecordingCall.getBoolean("includeBase64", false)) {
-                                        try {
-                                            InputStream iStream = getContext().getContentResolver().openInputStream(uri);
-                                            byte[] inputData = getBytes(iStream);
-                                            String base64 = Base64.encodeToString(inputData, Base64.DEFAULT);
-                                            result.put("base64", base64);
-                                        } catch (IOException e) {
-                                            throw new RuntimeException(e);
-                                        }
+                                    if (call.getBoolean("includeUrl", false) && isFrameServerRunning()) {
+                                        result.put("url", frameServer.serveUri(uri, "video/mp4"));
                                     }
                                     result.put("path", path);
-                                    recorder = null;
-                                    stopRecordingCall.resolve(result);
-                                    stopRecordingCall = null;
+                                    // Content URI of the recording, readable with readRecordingChunk
+                                    recordingUris.add(uri.toString());
+                                    result.put("uri", uri.toString());
+                                    if (call.getBoolean("includeBase64", false)) {
+                                        // Whole recordings are large, keep the main thread free while encoding
+                                        recordingIoExecutor.execute(() -> {
+                                            try (FileInputStream input = new ParcelFileDescriptor.AutoCloseInputStream(openFileDescriptor(uri.toString()));
+                                                 FileChannel channel = input.getChannel()) {
+                                                long size = channel.size();
+                                                result.put("size", size);
+                                                if (size > MAX_BASE64_RECORDING_SIZE) {
+                                                    // Left to readRecordingChunk or the URL, flagged so it isn't taken for a failure
+                                                    result.put("base64Omitted", true);
+                                                } else {
+                                                    result.put("base64", encodeBase64(channel, size));
+                                                }
+                                                call.resolve(result);
+                                            } catch (IOException | OutOfMemoryError e) {
+                                                call.reject("Failed to read recording: " + e.getMessage());
+                                            }
+                                        });
+                                    } else {
+                                        call.resolve(result);
+                                    }
                                 }
                             }
                         }
@@ -1362,20 +1634,73 @@ public class CameraPreviewPlugin extends Plugin {
         });
     }
 
-    private byte[] getBytes(InputStream inputStream) throws IOException {
-        ByteArrayOutputStream byteBuffer = new ByteArrayOutputStream();
-        int bufferSize = 1024;
-        byte[] buffer = new byte[bufferSize];
+    /**
+     * Base64 of a whole file, encoded while it is read in large blocks into an output sized up
+     * front, so the file bytes are never held in memory as a whole next to the encoded text.
+     * The encoded bytes are still copied once into the returned string, so callers only encode
+     * files up to MAX_BASE64_RECORDING_SIZE.
+     * @param size size of the file, as read from the channel
+     */
+    private String encodeBase64(FileChannel channel, long size) throws IOException {
+        // 4 characters per 3 bytes, on one line like every other base64 result
+        ByteArrayOutputStream output = new ByteArrayOutputStream((int) ((size + 2) / 3 * 4));
+        ByteBuffer buffer = ByteBuffer.allocate(RECORDING_CHUNK_SIZE);
+        try (Base64OutputStream encoder = new Base64OutputStream(output, Base64.NO_WRAP)) {
+            while (channel.read(buffer) > 0) {
+                encoder.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+        }
+        return output.toString("US-ASCII");
+    }
 
-        int len = 0;
-        while ((len = inputStream.read(buffer)) != -1) {
-            byteBuffer.write(buffer, 0, len);
+    /**
+     * Read part of a recording as base64, so long videos can be consumed in chunks at bounded
+     * memory instead of with stopRecording's includeBase64. Only recordings returned by
+     * stopRecording can be read, not arbitrary files of the app.
+     */
+    @PluginMethod
+    public void readRecordingChunk(PluginCall call) {
+        String source = call.getString("uri");
+        if (source == null) {
+            call.reject("uri parameter is required");
+            return;
+        }
+        if (!recordingUris.contains(source)) {
+            call.reject("Not a recording returned by stopRecording");
+            return;
         }
-        return byteBuffer.toByteArray();
+        long offset = Math.max(0, call.getDouble("offset", 0.0).longValue());
+        int length = Math.max(1, Math.min(MAX_RECORDING_CHUNK_SIZE, call.getInt("length", RECORDING_CHUNK_SIZE)));
+        recordingIoExecutor.execute(() -> {
+            try (FileInputStream input = new ParcelFileDescriptor.AutoCloseInputStream(openFileDescriptor(source));
+                 FileChannel channel = input.getChannel()) {
+                long size = channel.size();
+                ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(0, Math.min(length, size - offset)));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, offset + buffer.position()) < 0) {
+                        break;
+                    }
+                }
+                JSObject result = new JSObject();
+                result.put("data", Base64.encodeToString(buffer.array(), 0, buffer.position(), Base64.NO_WRAP));
+                result.put("offset", offset);
+                result.put("length", buffer.position());
+                result.put("size", size);
+                result.put("eof", offset + buffer.position() >= size);
+                call.resolve(result);
+            } catch (IOException e) {
+                call.reject("Failed to read recording: " + e.getMessage());
+            }
+        });
     }
 
     @PluginMethod
     public void stopRecording(PluginCall call) {
+        if (call.getBoolean("includeUrl", false) && !isFrameServerRunning()) {
+            call.reject("Frame server is not running.");
+            return;
+        }
         getActivity().runOnUiThread(new Runnable() {
 
             @Override
@@ -1405,10 +1730,110 @@ public class CameraPreviewPlugin extends Plugin {
         return byteArray;
     }
 
+    /**
+     * Start the loopback HTTP server serving snapshots, photos and videos as raw bytes, so results
+     * can be returned as URLs instead of base64 strings through the bridge
+     */
+    @PluginMethod
+    public void startFrameServer(PluginCall call) {
+        try {
+            if (frameServer == null) {
+                // Only the app's own pages may read served resources cross-origin
+                Uri localUrl = Uri.parse(getBridge().getLocalUrl());
+                frameServer = new FrameServer(getContext(), localUrl.getScheme() + "://" + localUrl.getEncodedAuthority());
+            }
+            frameServer.start(call.getInt("port", 0));
+            JSObject result = new JSObject();
+            result.put("url", frameServer.getBaseUrl());
+            result.put("port", frameServer.getPort());
+            result.put("token", frameServer.getToken());
+            call.resolve(result);
+        } catch (IOException e) {
+            call.reject("Failed to start frame server: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stop the frame server. URLs returned so far stop working and served snapshot files are deleted
+     */
+    @PluginMethod
+    public void stopFrameServer(PluginCall call) {
+        if (frameServer != null) {
+            frameServer.stop();
+        }
+        call.resolve();
+    }
+
+    private boolean isFrameServerRunning() {
+        return frameServer != null && frameServer.isRunning();
+    }
+
+    /**
+     * Encode the snapshot into the result and resolve the call. Base64 is encoded right away; for
+     * resultType "file" and "url" the JPEG is written on the I/O executor, so the analyzer
+     * never waits for the encoder or the disk
+     */
+    private void resolveSnapshot(PluginCall call, JSObject result, Bitmap bitmap, int quality) {
+        String resultType = call.getString("resultType", RESULT_TYPE_BASE64);
+        if (!RESULT_TYPE_FILE.equals(resultType) && !RESULT_TYPE_URL.equals(resultType)) {
+            result.put("base64", bitmap2Base64(bitmap, quality));
+            call.resolve(result);
+            return;
+        }
+        ioExecutor.execute(() -> {
+            File file = null;
+            try {
+                file = createSnapshotFile(call, resultType);
+                BitmapUtils.writeJpeg(bitmap, quality, file);
+                result.put("width", bitmap.getWidth());
+                result.put("height", bitmap.getHeight());
+                if (RESULT_TYPE_URL.equals(resultType)) {
+                    // The server owns the file and deletes it once it is no longer served
+                    result.put("url", frameServer.serveFile(file, "image/jpeg", true));
+                } else {
+                    result.put("path", file.getAbsolutePath());
+                }
+                call.resolve(result);
+            } catch (Exception e) {
+                if (file != null && RESULT_TYPE_URL.equals(resultType)) {
+                    file.delete();
+                }
+                call.reject("Failed to save snapshot: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * File a snapshot is written to. Files follow the takePhoto conventions: pathToSave under the
+     * app files directory, or a new file in the external cache directory. Snapshots served by the
+     * frame server go to a private cache directory
+     */
+    private File createSnapshotFile(PluginCall call, String resultType) throws IOException {
+        if (RESULT_TYPE_URL.equals(resultType)) {
+            if (!isFrameServerRunning()) {
+                throw new IOException("Frame server is not running.");
+            }
+            return File.createTempFile("snapshot", ".jpg", getSnapshotDir(new File(getContext().getCacheDir(), "snapshots")));
+        }
+        if (call.hasOption("pathToSave")) {
+            File file = new File(getContext().getFilesDir(), call.getString("pathToSave"));
+            getSnapshotDir(file.getParentFile());
+            return file;
+        }
+        File dir = getContext().getExternalCacheDir();
+        return File.createTempFile("snapshot-" + new Date().getTime() + "-", ".jpg",
+                dir != null ? dir : getContext().getCacheDir());
+    }
+
+    private static File getSnapshotDir(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        return dir;
+    }
+
     public static String bitmap2Base64(Bitmap bitmap, int quality) {
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.JPEG, quality, outputStream);
-        return Base64.encodeToString(outputStream.toByteArray(), Base64.DEFAULT);
+        return BitmapUtils.toBase64Jpeg(bitmap, quality);
     }
 
     @PluginMethod
@@ -1442,6 +1867,7 @@ public class CameraPreviewPlugin extends Plugin {
             useCaseGroup = null;
             recorder = null;
             currentRecording = null;
+            frameBufferPool.clear();
             Log.d("Camera", "handleOnPause: Camera stopped and references cleared.");
         }
 
@@ -1453,6 +1879,22 @@ public class CameraPreviewPlugin extends Plugin {
         super.handleOnPause();
     }
 
+    @Override
+    protected void handleOnDestroy() {
+        ioExecutor.shutdown();
+        recordingIoExecutor.shutdown();
+        modelExecutor.shutdown();
+        if (frameServer != null) {
+            frameServer.stop();
+        }
+        // Release the native interpreters of every model
+        qualityEngine.close();
+        if (blurDetectionHelper != null) {
+            blurDetectionHelper.close();
+        }
+        super.handleOnDestroy();
+    }
+
     @Override
     protected void handleOnResume() {
         if (camera != null) {
@@ -1517,20 +1959,18 @@ public class CameraPreviewPlugin extends Plugin {
     @PluginMethod
     public void detectBlur(PluginCall call) {
         String imageString = call.getString("image");
-        if (imageString == null) {
-            call.reject("Image parameter is required");
+        String path = call.getString("path");
+        if (imageString == null && path == null) {
+            call.reject("image or path parameter is required");
             return;
         }
 
         try {
-            // Convert base64 string to Bitmap
-            String base64String = imageString;
-            if (imageString.startsWith("data:")) {
-                base64String = imageString.substring(imageString.indexOf(",") + 1);
-            }
-
-            byte[] decodedBytes = Base64.decode(base64String, Base64.DEFAULT);
-            Bitmap bitmap = BitmapFactory.decodeByteArray(decodedBytes, 0, decodedBytes.length);
+            // Decided once, so the decode and the classification agree on model or Laplacian
+            BlurDetectionHelper helper = blurDetectionHelper;
+            int[] modelInputSize = helper != null ? helper.getInputSize() : null;
+            // Images are decoded only as far as the blur check needs
+            Bitmap bitmap = path != null ? decodeImageFile(path, modelInputSize) : decodeBase64Image(imageString, modelInputSize);
 
             if (bitmap == null) {
                 call.reject("Invalid image data");
@@ -1538,8 +1978,8 @@ public class CameraPreviewPlugin extends Plugin {
             }
 
             // Use the new confidence detection method
-            if (blurDetectionHelper != null && blurDetectionHelper.isInitialized()) {
-                java.util.Map<String, Object> result = blurDetectionHelper.detectBlurWithConfidence(bitmap);
+            if (modelInputSize != null) {
+                java.util.Map<String, Object> result = helper.detectBlurWithConfidence(bitmap);
 
                 JSObject jsResult = new JSObject();
                 jsResult.put("isBlur", result.get("isBlur"));
@@ -1549,25 +1989,356 @@ public class CameraPreviewPlugin extends Plugin {
                 call.resolve(jsResult);
             } else {
                 // Fallback to Laplacian algorithm with confidence scores
-                double laplacianScore = calculateLaplacianBlurScore(bitmap);
-                boolean isBlur = laplacianScore < 150;
-                double normalizedScore = Math.max(0.0, Math.min(1.0, laplacianScore / 300.0));
-                double sharpConfidence = normalizedScore;
-                double blurConfidence = 1.0 - normalizedScore;
+                call.resolve(laplacianBlurResult(bitmap));
+            }
 
-                JSObject result = new JSObject();
-                result.put("isBlur", isBlur);
-                result.put("blurConfidence", blurConfidence);
-                result.put("sharpConfidence", sharpConfidence);
+        } catch (Exception e) {
+            call.reject("Failed to process image: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Detect blur in several images with batched TFLite inference
+     * Takes base64 "images" or file "paths"; images that cannot be decoded get an "error" entry
+     * instead of failing the whole call
+     */
+    @PluginMethod
+    public void detectBlurBatch(PluginCall call) {
+        JSArray images = call.getArray("images");
+        JSArray paths = call.getArray("paths");
+        JSArray sources = images != null ? images : paths;
+        if (sources == null) {
+            call.reject("images or paths parameter is required");
+            return;
+        }
 
+        try {
+            List<String> inputs = sources.toList();
+            boolean fromPaths = images == null;
+            // Decided once, so the decode and the classification agree on model or Laplacian
+            BlurDetectionHelper helper = blurDetectionHelper;
+            int[] modelInputSize = helper != null ? helper.getInputSize() : null;
+            JSArray results = new JSArray();
+            // One batch of the model at a time, so only that many decoded images are held at once
+            for (int chunkStart = 0; chunkStart < inputs.size(); chunkStart += InterpreterSlot.MAX_BATCH_SIZE) {
+                int offset = chunkStart;
+                Bitmap[] decoded = new Bitmap[Math.min(InterpreterSlot.MAX_BATCH_SIZE, inputs.size() - chunkStart)];
+                // Decoding dominates for large photos, so it runs in parallel as well
+                ParallelWorkers.runStripes(decoded.length, 1, (start, end) -> {
+                    for (int i = start; i < end; i++) {
+                        String input = inputs.get(offset + i);
+                        try {
+                            decoded[i] = fromPaths ? decodeImageFile(input, modelInputSize) : decodeBase64Image(input, modelInputSize);
+                        } catch (Exception e) {
+                            Log.w("Camera", "Failed to decode image " + (offset + i) + ": " + e.getMessage());
+                        }
+                    }
+                });
+
+                List<Bitmap> bitmaps = new ArrayList<>();
+                for (Bitmap bitmap : decoded) {
+                    if (bitmap != null) {
+                        bitmaps.add(bitmap);
+                    }
+                }
+                List<java.util.Map<String, Object>> blurResults = null;
+                if (modelInputSize != null) {
+                    blurResults = helper.detectBlurBatch(bitmaps);
+                }
+
+                int next = 0;
+                for (Bitmap bitmap : decoded) {
+                    if (bitmap == null) {
+                        JSObject error = new JSObject();
+                        error.put("error", "Invalid image data");
+                        results.put(error);
+                    } else if (blurResults != null) {
+                        java.util.Map<String, Object> result = blurResults.get(next++);
+                        JSObject jsResult = new JSObject();
+                        jsResult.put("isBlur", result.get("isBlur"));
+                        jsResult.put("blurConfidence", result.get("blurConfidence"));
+                        jsResult.put("sharpConfidence", result.get("sharpConfidence"));
+                        results.put(jsResult);
+                    } else {
+                        results.put(laplacianBlurResult(bitmap));
+                    }
+                }
+                for (Bitmap bitmap : bitmaps) {
+                    bitmap.recycle();
+                }
+            }
+            JSObject result = new JSObject();
+            result.put("results", results);
+            call.resolve(result);
+        } catch (Exception e) {
+            call.reject("Failed to process images: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Decode a base64 image, with or without a data URL prefix
+     * @return the bitmap, or null if the data is not an image
+     */
+    private Bitmap decodeBase64Image(String imageString) {
+        String base64String = imageString;
+        if (imageString.startsWith("data:")) {
+            base64String = imageString.substring(imageString.indexOf(",") + 1);
+        }
+
+        byte[] decodedBytes = Base64.decode(base64String, Base64.DEFAULT);
+        return BitmapFactory.decodeByteArray(decodedBytes, 0, decodedBytes.length);
+    }
+
+    /**
+     * Decode a base64 image for blur detection, just as far as the check needs, like
+     * {@link #decodeImageFile}
+     * @param modelInputSize input size of the blur model that will classify the bitmap, or null
+     *                       when the Laplacian will
+     * @return the bitmap, or null if the data is not an image
+     */
+    private Bitmap decodeBase64Image(String imageString, int[] modelInputSize) {
+        String base64String = imageString;
+        if (imageString.startsWith("data:")) {
+            base64String = imageString.substring(imageString.indexOf(",") + 1);
+        }
+        byte[] data = Base64.decode(base64String, Base64.DEFAULT);
+
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            return null;
+        }
+
+        if (modelInputSize != null) {
+            try {
+                BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(data, 0, data.length, false);
+                try {
+                    return decoder.decodeRegion(blurModelRegion(bounds, modelInputSize), null);
+                } finally {
+                    decoder.recycle();
+                }
+            } catch (IOException e) {
+                // Format without region decoding, decode it in full
+                Log.d("Camera", "Region decoding unavailable: " + e.getMessage());
+                return BitmapFactory.decodeByteArray(data, 0, data.length);
+            }
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = laplacianSampleSize(bounds);
+        return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    }
+
+    /**
+     * Decode an image file given as a path, file:// URL or content:// URI, for blur detection.
+     * Only the bounds are read first, then the file is decoded just as far as the check needs: the
+     * center region the model looks at when one is given, otherwise a subsampled image for the
+     * Laplacian. A 12MP photo thus never becomes a full resolution bitmap. Every pass opens the
+     * file again, since a content provider may hand out a pipe that the previous pass consumed.
+     * @param modelInputSize input size of the blur model that will classify the bitmap, or null
+     *                       when the Laplacian will
+     * @return the bitmap, or null if the file is not an image
+     */
+    private Bitmap decodeImageFile(String source, int[] modelInputSize) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (ParcelFileDescriptor descriptor = openFileDescriptor(source)) {
+            BitmapFactory.decodeFileDescriptor(descriptor.getFileDescriptor(), null, bounds);
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            return null;
+        }
+
+        if (modelInputSize != null) {
+            try (ParcelFileDescriptor descriptor = openFileDescriptor(source)) {
+                BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(descriptor.getFileDescriptor(), false);
+                try {
+                    return decoder.decodeRegion(blurModelRegion(bounds, modelInputSize), null);
+                } finally {
+                    decoder.recycle();
+                }
+            } catch (IOException e) {
+                // Format without region decoding, decode it in full
+                Log.d("Camera", "Region decoding unavailable: " + e.getMessage());
+            }
+            try (ParcelFileDescriptor descriptor = openFileDescriptor(source)) {
+                return BitmapFactory.decodeFileDescriptor(descriptor.getFileDescriptor());
+            }
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = laplacianSampleSize(bounds);
+        try (ParcelFileDescriptor descriptor = openFileDescriptor(source)) {
+            return BitmapFactory.decodeFileDescriptor(descriptor.getFileDescriptor(), null, options);
+        }
+    }
+
+    /** The model sees the center of the image at native resolution */
+    private static Rect blurModelRegion(BitmapFactory.Options bounds, int[] modelInputSize) {
+        int width = Math.min(modelInputSize[0], bounds.outWidth);
+        int height = Math.min(modelInputSize[1], bounds.outHeight);
+        int left = (bounds.outWidth - width) / 2;
+        int top = (bounds.outHeight - height) / 2;
+        return new Rect(left, top, left + width, top + height);
+    }
+
+    /** The Laplacian samples every few pixels, so a reduced resolution is enough */
+    private static int laplacianSampleSize(BitmapFactory.Options bounds) {
+        int sampleSize = 1;
+        while (Math.max(bounds.outWidth, bounds.outHeight) / (sampleSize * 2) >= BLUR_DECODE_MIN_LENGTH) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Open a file given as a path, file:// URL or content:// URI. A descriptor rather than a
+     * stream, so readers can seek instead of buffering the whole file
+     */
+    private ParcelFileDescriptor openFileDescriptor(String source) throws IOException {
+        Uri uri = Uri.parse(source);
+        if ("content".equals(uri.getScheme())) {
+            ParcelFileDescriptor descriptor = getContext().getContentResolver().openFileDescriptor(uri, "r");
+            if (descriptor == null) {
+                throw new FileNotFoundException(source);
+            }
+            return descriptor;
+        }
+        String path = "file".equals(uri.getScheme()) ? uri.getPath() : source;
+        return ParcelFileDescriptor.open(new File(path), ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    /**
+     * Load an image-quality model (glare, document presence...) evaluated by takeSnapshot with
+     * checkQuality and by evaluateQuality, together with the other loaded models
+     */
+    @PluginMethod
+    public void loadQualityModel(PluginCall call) {
+        String name = call.getString("name");
+        String source = call.getString("path", call.getString("asset"));
+        if (name == null || source == null) {
+            call.reject("name and path or asset parameters are required");
+            return;
+        }
+        if (BlurDetectionHelper.QUALITY_MODEL_NAME.equals(name)) {
+            call.reject("The name " + name + " is reserved for the blur model");
+            return;
+        }
+        String[] labels;
+        try {
+            JSArray labelArray = call.getArray("labels");
+            labels = labelArray != null ? labelArray.<String>toList().toArray(new String[0]) : null;
+        } catch (JSONException e) {
+            call.reject("labels must be an array of strings");
+            return;
+        }
+        int failIndex = call.getInt("failIndex", -1);
+        float failThreshold = call.getFloat("failThreshold", 0.5f);
+        int interpreters = call.getInt("interpreters", 1);
+        // Mapping, calibrating and building the interpreters takes a while, keep it off the call thread
+        modelExecutor.execute(() -> {
+            try {
+                int[] inputSize = qualityEngine.loadModel(getContext(), name, source, labels,
+                        failIndex, failThreshold, interpreters);
+                JSObject result = new JSObject();
+                result.put("inputWidth", inputSize[0]);
+                result.put("inputHeight", inputSize[1]);
                 call.resolve(result);
+            } catch (Exception e) {
+                call.reject("Failed to load quality model: " + e.getMessage());
             }
+        });
+    }
+
+    @PluginMethod
+    public void unloadQualityModel(PluginCall call) {
+        String name = call.getString("name");
+        if (name == null) {
+            call.reject("name parameter is required");
+            return;
+        }
+        qualityEngine.unloadModel(name);
+        call.resolve();
+    }
 
+    /**
+     * Run every loaded quality model on a base64 image
+     */
+    @PluginMethod
+    public void evaluateQuality(PluginCall call) {
+        String imageString = call.getString("image");
+        if (imageString == null) {
+            call.reject("Image parameter is required");
+            return;
+        }
+        try {
+            Bitmap bitmap = decodeBase64Image(imageString);
+            if (bitmap == null) {
+                call.reject("Invalid image data");
+                return;
+            }
+            call.resolve(toQualityResult(qualityEngine.evaluate(bitmap, false)));
         } catch (Exception e) {
             call.reject("Failed to process image: " + e.getMessage());
         }
     }
 
+    /**
+     * Quality verdict of a camera frame; YUV frames feed the models from their planes
+     */
+    private List<QualityEngine.ModelResult> evaluateQuality(ImageProxy image, Rect cropRect, Bitmap bitmap) {
+        if (image.getFormat() != ImageFormat.YUV_420_888) {
+            return qualityEngine.evaluate(bitmap, true);
+        }
+        Rect region = cropRect != null ? cropRect : new Rect(0, 0, image.getWidth(), image.getHeight());
+        return qualityEngine.evaluate(image.getPlanes(), region, image.getImageInfo().getRotationDegrees());
+    }
+
+    private JSObject toQualityResult(List<QualityEngine.ModelResult> modelResults) {
+        JSObject models = new JSObject();
+        for (QualityEngine.ModelResult modelResult : modelResults) {
+            JSArray scores = new JSArray();
+            for (float score : modelResult.scores) {
+                try {
+                    scores.put((double) score);
+                } catch (JSONException e) {
+                    // Only thrown for NaN or infinite scores
+                    scores.put(JSONObject.NULL);
+                }
+            }
+            JSObject model = new JSObject();
+            model.put("pass", modelResult.pass);
+            model.put("index", modelResult.index);
+            if (modelResult.label != null) {
+                model.put("label", modelResult.label);
+            }
+            model.put("scores", scores);
+            models.put(modelResult.name, model);
+        }
+        JSObject result = new JSObject();
+        result.put("pass", QualityEngine.passes(modelResults));
+        result.put("models", models);
+        return result;
+    }
+
+    /**
+     * Laplacian blur result with confidence scores, used when the TFLite model is unavailable
+     */
+    private JSObject laplacianBlurResult(Bitmap bitmap) {
+        double laplacianScore = calculateLaplacianBlurScore(bitmap);
+        boolean isBlur = laplacianScore < 150;
+        double normalizedScore = Math.max(0.0, Math.min(1.0, laplacianScore / 300.0));
+        double sharpConfidence = normalizedScore;
+        double blurConfidence = 1.0 - normalizedScore;
+
+        JSObject result = new JSObject();
+        result.put("isBlur", isBlur);
+        result.put("blurConfidence", blurConfidence);
+        result.put("sharpConfidence", sharpConfidence);
+        return result;
+    }
+
     @PluginMethod
     public void getOrientation(PluginCall call) {
         int orientation = getContext().getResources().getConfiguration().orientation;
@@ -1582,19 +2353,36 @@ public class CameraPreviewPlugin extends Plugin {
 
     /**
      * Calculate if image is blurry using TFLite model (with Laplacian fallback)
-     * Returns true if blurry, false if sharp
+     * Returns the label and the stage that decided it
      */
-    private boolean calculateBlurResult(Bitmap bitmap) {
-        if (bitmap == null) return false;
+    private BlurDetectionHelper.BlurResult calculateBlurResult(Bitmap bitmap) {
+        if (bitmap == null) return new BlurDetectionHelper.BlurResult(false, BlurDetectionHelper.STAGE_LAPLACIAN, Double.NaN);
 
-        // Use TFLite model if available, otherwise fallback to Laplacian
+        // Use TFLite model if available (behind the Laplacian stage in cascade mode), otherwise fallback to Laplacian
         if (blurDetectionHelper != null && blurDetectionHelper.isInitialized()) {
-            return blurDetectionHelper.isBlurry(bitmap);
+            return blurDetectionHelper.classifyFrame(bitmap);
         } else {
             // Fallback to original Laplacian algorithm
             double laplacianScore = calculateLaplacianBlurScore(bitmap);
-            return laplacianScore < 50;
+            return new BlurDetectionHelper.BlurResult(laplacianScore < 50, BlurDetectionHelper.STAGE_LAPLACIAN, laplacianScore);
+        }
+    }
+
+    /**
+     * Same as {@link #calculateBlurResult(Bitmap)} for a camera frame. YUV frames are read straight
+     * from their planes: the TFLite model samples its input from them and the Laplacian fallback uses
+     * the luma plane, so the bitmap is only needed for RGBA frames
+     */
+    private BlurDetectionHelper.BlurResult calculateBlurResult(ImageProxy image, Rect cropRect, Bitmap bitmap) {
+        if (image.getFormat() != ImageFormat.YUV_420_888) {
+            return calculateBlurResult(bitmap);
         }
+        if (blurDetectionHelper != null && blurDetectionHelper.isInitialized()) {
+            Rect region = cropRect != null ? cropRect : new Rect(0, 0, image.getWidth(), image.getHeight());
+            return blurDetectionHelper.classifyFrame(image.getPlanes(), region, image.getImageInfo().getRotationDegrees());
+        }
+        double laplacianScore = calculateLaplacianBlurScore(image, cropRect);
+        return new BlurDetectionHelper.BlurResult(laplacianScore < 50, BlurDetectionHelper.STAGE_LAPLACIAN, laplacianScore);
     }
 
     /**
@@ -1602,46 +2390,44 @@ public class CameraPreviewPlugin extends Plugin {
      * Returns raw Laplacian variance score (will be converted to percentage by BlurDetectionHelper)
      */
     private double calculateLaplacianBlurScore(Bitmap bitmap) {
-        if (bitmap == null) return 0.0;
-
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-
-        // Convert to grayscale for better blur detection
-        int[] pixels = new int[width * height];
-        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
-
-        double[] grayscale = new double[width * height];
-        for (int i = 0; i < pixels.length; i++) {
-            int pixel = pixels[i];
-            int r = (pixel >> 16) & 0xFF;
-            int g = (pixel >> 8) & 0xFF;
-            int b = pixel & 0xFF;
-            grayscale[i] = 0.299 * r + 0.587 * g + 0.114 * b;
-        }
-
-        // Apply Laplacian kernel for edge detection
-        double variance = 0.0;
-        int count = 0;
-
-        // Sample every 4th pixel for performance (similar to web implementation)
-        int step = 4;
-        for (int y = step; y < height - step; y += step) {
-            for (int x = step; x < width - step; x += step) {
-                int idx = y * width + x;
-
-                // 3x3 Laplacian kernel
-                double laplacian =
-                        -grayscale[idx - width - 1] - grayscale[idx - width] - grayscale[idx - width + 1] +
-                                -grayscale[idx - 1] + 8 * grayscale[idx] - grayscale[idx + 1] +
-                                -grayscale[idx + width - 1] - grayscale[idx + width] - grayscale[idx + width + 1];
-
-                variance += laplacian * laplacian;
-                count++;
+        return BlurDetectionHelper.calculateLaplacianBlurScore(bitmap);
+    }
+
+    /**
+     * Laplacian blur score read straight from the Y plane of a YUV frame, no Bitmap involved
+     */
+    private double calculateLaplacianBlurScore(ImageProxy image, Rect cropRect) {
+        ImageProxy.PlaneProxy yPlane = image.getPlanes()[0];
+        Rect region = cropRect != null ? cropRect : new Rect(0, 0, image.getWidth(), image.getHeight());
+        return BlurDetectionHelper.calculateLaplacianBlurScore(yPlane.getBuffer(), yPlane.getRowStride(), region);
+    }
+
+    /**
+     * Exposure statistics and Laplacian score of a camera frame, in one sampled pass. YUV frames are
+     * read from the luma plane; RGBA frames use {@code bitmap}, or a bitmap converted here if null
+     */
+    private JSObject analyzeLuma(ImageProxy image, Rect cropRect, Bitmap bitmap) {
+        BlurDetectionHelper.LumaStats stats;
+        if (image.getFormat() == ImageFormat.YUV_420_888) {
+            ImageProxy.PlaneProxy yPlane = image.getPlanes()[0];
+            Rect region = cropRect != null ? cropRect : new Rect(0, 0, image.getWidth(), image.getHeight());
+            stats = BlurDetectionHelper.analyzeLuma(yPlane.getBuffer(), yPlane.getRowStride(), region);
+        } else if (bitmap != null) {
+            stats = BlurDetectionHelper.analyzeLuma(bitmap);
+        } else {
+            Bitmap frame = convertFrame(image, cropRect, 1);
+            if (frame == null) {
+                throw new IllegalStateException("Frame conversion failed");
             }
+            stats = BlurDetectionHelper.analyzeLuma(frame);
         }
-
-        return count > 0 ? variance / count : 0.0;
+        JSObject result = new JSObject();
+        result.put("brightness", stats.mean);
+        result.put("clippedRatio", stats.clippedRatio);
+        result.put("darkRatio", stats.darkRatio);
+        result.put("contrast", stats.contrast);
+        result.put("laplacianScore", stats.laplacianScore);
+        return result;
     }
 
     /**
@@ -0,0 +1,165 @@
+package com.tonyxlh.capacitor.camera;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+
+/**
+ * Bounded pool of reusable frame buffers, keyed by resolution and format.
+ *
+ * <p>Converting a 4K frame needs a 12 MB NV21 array or a 33 MB ARGB array. Allocating those for
+ * every snapshot causes GC pauses that show up as preview stutter, so the analyzer borrows them from
+ * this pool and gives them back once the Bitmap has been built. Only a few resolutions are kept at
+ * a time; the least recently used one is evicted when a new resolution shows up, and the owner
+ * calls {@link #clear()} when the camera resolution changes.
+ */
+public class FrameBufferPool {
+    /** NV21 byte buffer: {@code width * height} Y bytes followed by interleaved VU bytes. */
+    public static final int FORMAT_NV21 = 1;
+    /** ARGB_8888 int buffer: one int per pixel. */
+    public static final int FORMAT_ARGB = 2;
+    /** RGBA_8888 byte buffer: four bytes per pixel, no row padding. */
+    public static final int FORMAT_RGBA = 3;
+    /** Mutable ARGB_8888 Bitmap. */
+    public static final int FORMAT_BITMAP = 4;
+
+    private static final int DEFAULT_MAX_KEYS = 4;
+    private static final int DEFAULT_MAX_BUFFERS_PER_KEY = 2;
+
+    private final Entry[] entries;
+    private final int maxBuffersPerKey;
+    private long useCounter = 0;
+
+    public FrameBufferPool() {
+        this(DEFAULT_MAX_KEYS, DEFAULT_MAX_BUFFERS_PER_KEY);
+    }
+
+    public FrameBufferPool(int maxKeys, int maxBuffersPerKey) {
+        this.entries = new Entry[Math.max(1, maxKeys)];
+        this.maxBuffersPerKey = Math.max(1, maxBuffersPerKey);
+    }
+
+    /** Size in bytes of an NV21 frame, matching the layout produced by {@link BitmapUtils}. */
+    public static int nv21Size(int width, int height) {
+        int imageSize = width * height;
+        return imageSize + 2 * (imageSize / 4);
+    }
+
+    /** Borrows a byte buffer able to hold an NV21 frame of the given size. */
+    public synchronized byte[] acquireBytes(int width, int height) {
+        Entry entry = findOrCreate(width, height, FORMAT_NV21);
+        byte[] buffer = (byte[]) entry.buffers.pollFirst();
+        return buffer != null ? buffer : new byte[nv21Size(width, height)];
+    }
+
+    /** Borrows a byte buffer able to hold an unpadded RGBA_8888 frame of the given size. */
+    public synchronized byte[] acquireRgbaBytes(int width, int height) {
+        Entry entry = findOrCreate(width, height, FORMAT_RGBA);
+        byte[] buffer = (byte[]) entry.buffers.pollFirst();
+        return buffer != null ? buffer : new byte[width * height * 4];
+    }
+
+    /** Borrows a mutable ARGB_8888 Bitmap of the given size. */
+    public synchronized Bitmap acquireBitmap(int width, int height) {
+        Entry entry = findOrCreate(width, height, FORMAT_BITMAP);
+        Bitmap bitmap = (Bitmap) entry.buffers.pollFirst();
+        return bitmap != null ? bitmap : Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /** Borrows an int buffer able to hold an ARGB frame of the given size. */
+    public synchronized int[] acquireInts(int width, int height) {
+        Entry entry = findOrCreate(width, height, FORMAT_ARGB);
+        int[] buffer = (int[]) entry.buffers.pollFirst();
+        return buffer != null ? buffer : new int[width * height];
+    }
+
+    /**
+     * Returns a buffer obtained from {@link #acquireBytes} or {@link #acquireRgbaBytes}, told apart
+     * by their length. Buffers of evicted sizes are dropped.
+     */
+    public synchronized void release(byte[] buffer, int width, int height) {
+        if (buffer == null) {
+            return;
+        }
+        if (buffer.length == nv21Size(width, height)) {
+            offer(width, height, FORMAT_NV21, buffer);
+        } else if (buffer.length == width * height * 4) {
+            offer(width, height, FORMAT_RGBA, buffer);
+        }
+    }
+
+    /** Returns a Bitmap obtained from {@link #acquireBitmap}. Bitmaps of evicted sizes are dropped. */
+    public synchronized void release(Bitmap bitmap) {
+        if (bitmap != null && bitmap.isMutable() && !bitmap.isRecycled()) {
+            offer(bitmap.getWidth(), bitmap.getHeight(), FORMAT_BITMAP, bitmap);
+        }
+    }
+
+    /** Returns a buffer obtained from {@link #acquireInts}. Buffers of evicted sizes are dropped. */
+    public synchronized void release(int[] buffer, int width, int height) {
+        if (buffer != null && buffer.length == width * height) {
+            offer(width, height, FORMAT_ARGB, buffer);
+        }
+    }
+
+    /** Drops every pooled buffer, e.g. after the analysis resolution changed. */
+    public synchronized void clear() {
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = null;
+        }
+    }
+
+    private void offer(int width, int height, int format, Object buffer) {
+        Entry entry = find(width, height, format);
+        // The size was evicted while the buffer was borrowed, let it be collected.
+        if (entry != null && entry.buffers.size() < maxBuffersPerKey) {
+            entry.buffers.addFirst(buffer);
+        }
+    }
+
+    private Entry find(int width, int height, int format) {
+        for (Entry entry : entries) {
+            if (entry != null && entry.width == width && entry.height == height && entry.format == format) {
+                entry.lastUsed = ++useCounter;
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private Entry findOrCreate(int width, int height, int format) {
+        Entry entry = find(width, height, format);
+        if (entry != null) {
+            return entry;
+        }
+        // Reuse an empty slot, otherwise evict the least recently used size.
+        int victim = 0;
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i] == null) {
+                victim = i;
+                break;
+            }
+            if (entries[i].lastUsed < entries[victim].lastUsed) {
+                victim = i;
+            }
+        }
+        entry = new Entry(width, height, format);
+        entry.lastUsed = ++useCounter;
+        entries[victim] = entry;
+        return entry;
+    }
+
+    private static class Entry {
+        final int width;
+        final int height;
+        final int format;
+        final ArrayDeque<Object> buffers = new ArrayDeque<>();
+        long lastUsed;
+
+        Entry(int width, int height, int format) {
+            this.width = width;
+            this.height = height;
+            this.format = format;
+        }
+    }
+}
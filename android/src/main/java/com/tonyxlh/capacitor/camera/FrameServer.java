@@ -0,0 +1,460 @@
+package com.tonyxlh.capacitor.camera;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Minimal HTTP server on the loopback interface serving captured frames, photos and videos.
+ *
+ * <p>Base64 results are a third larger than the data and are serialized by the Capacitor bridge on
+ * the main thread. With the server running, results are registered here and returned as URLs the
+ * web view fetches directly: the bytes go from the file to the socket with
+ * {@link FileChannel#transferTo} and never enter the Java heap.
+ *
+ * <p>The server only listens on 127.0.0.1, and every request must carry the token of the session,
+ * as a {@code token} query parameter or an {@code Authorization: Bearer} header. GET and HEAD are
+ * served with single byte ranges so videos can be seeked, OPTIONS answers CORS preflights, and each
+ * connection carries one request. Cross-origin reads are only allowed to the web view's own origin,
+ * so a page elsewhere that learns a URL cannot read it through the browser.
+ */
+public class FrameServer {
+    private static final String TAG = "FrameServer";
+    private static final int MAX_HEADER_BYTES = 8 * 1024;
+    private static final int MAX_CONNECTIONS = 4;
+    private static final int SOCKET_TIMEOUT_MS = 10000;
+    // Registered resources kept at most, the oldest is forgotten (and deleted if owned) beyond this
+    private static final int MAX_RESOURCES = 64;
+
+    /** A file or content URI served under an id. */
+    private static class Resource {
+        final File file;
+        final Uri uri;
+        final String mimeType;
+        // Temporary file created for the server, deleted once forgotten
+        final boolean owned;
+
+        Resource(File file, Uri uri, String mimeType, boolean owned) {
+            this.file = file;
+            this.uri = uri;
+            this.mimeType = mimeType;
+            this.owned = owned;
+        }
+    }
+
+    private final Context context;
+    // Origin of the app's web view, the only one CORS responses allow, e.g. https://localhost
+    private final String allowedOrigin;
+    private final Map<String, Resource> resources = new LinkedHashMap<>();
+    private ServerSocketChannel serverChannel;
+    private ExecutorService workers;
+    private String token;
+    private long nextId = 0;
+
+    /**
+     * @param allowedOrigin origin of the app's web view, e.g. {@code https://localhost}, or null to
+     *                      allow no cross-origin reads
+     */
+    public FrameServer(Context context, String allowedOrigin) {
+        this.context = context.getApplicationContext();
+        this.allowedOrigin = allowedOrigin;
+    }
+
+    /**
+     * Starts listening on 127.0.0.1 with a new session token. Does nothing if already running.
+     * @param port port to bind, 0 for any free port
+     * @return the bound port
+     */
+    public synchronized int start(int port) throws IOException {
+        if (serverChannel != null) {
+            return getPort();
+        }
+        ServerSocketChannel server = ServerSocketChannel.open();
+        try {
+            server.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port));
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+        byte[] random = new byte[16];
+        new SecureRandom().nextBytes(random);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : random) {
+            hex.append(String.format(Locale.US, "%02x", b));
+        }
+        token = hex.toString();
+        serverChannel = server;
+        workers = Executors.newFixedThreadPool(MAX_CONNECTIONS);
+        ExecutorService connectionWorkers = workers;
+        Thread acceptThread = new Thread(() -> acceptLoop(server, connectionWorkers), TAG);
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        Log.d(TAG, "Listening on " + getBaseUrl());
+        return getPort();
+    }
+
+    public synchronized boolean isRunning() {
+        return serverChannel != null;
+    }
+
+    public synchronized int getPort() {
+        return serverChannel != null ? serverChannel.socket().getLocalPort() : 0;
+    }
+
+    public synchronized String getToken() {
+        return token;
+    }
+
+    /** e.g. {@code http://127.0.0.1:43210} */
+    public synchronized String getBaseUrl() {
+        return "http://127.0.0.1:" + getPort();
+    }
+
+    /**
+     * Stops listening and forgets every resource, deleting the files owned by the server. Requests
+     * being served are completed.
+     */
+    public void stop() {
+        Resource[] forgotten;
+        synchronized (this) {
+            if (serverChannel == null) {
+                return;
+            }
+            try {
+                serverChannel.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Error closing server: " + e.getMessage());
+            }
+            workers.shutdown();
+            serverChannel = null;
+            workers = null;
+            token = null;
+            forgotten = resources.values().toArray(new Resource[0]);
+            resources.clear();
+        }
+        for (Resource resource : forgotten) {
+            deleteIfOwned(resource);
+        }
+    }
+
+    /**
+     * Serves a file until the server stops or {@link #MAX_RESOURCES} newer resources are registered
+     * @param owned true for a temporary file, deleted once it is no longer served
+     * @return the URL of the file, including the token
+     */
+    public String serveFile(File file, String mimeType, boolean owned) {
+        return register(new Resource(file, null, mimeType, owned), extensionOf(file.getName()));
+    }
+
+    /**
+     * Serves a content URI, e.g. a MediaStore video
+     * @return the URL of the content, including the token
+     */
+    public String serveUri(Uri uri, String mimeType) {
+        return register(new Resource(null, uri, mimeType, false), "video/mp4".equals(mimeType) ? ".mp4" : "");
+    }
+
+    private String register(Resource resource, String extension) {
+        Resource evicted = null;
+        String url;
+        synchronized (this) {
+            if (serverChannel == null) {
+                throw new IllegalStateException("Frame server is not running");
+            }
+            String id = Long.toString(nextId++) + extension;
+            resources.put(id, resource);
+            if (resources.size() > MAX_RESOURCES) {
+                Iterator<Resource> oldest = resources.values().iterator();
+                evicted = oldest.next();
+                oldest.remove();
+            }
+            url = getBaseUrl() + "/" + id + "?token=" + token;
+        }
+        if (evicted != null) {
+            deleteIfOwned(evicted);
+        }
+        return url;
+    }
+
+    private static String extensionOf(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 ? name.substring(dot) : "";
+    }
+
+    private static void deleteIfOwned(Resource resource) {
+        if (resource.owned && resource.file != null && !resource.file.delete()) {
+            Log.w(TAG, "Could not delete " + resource.file);
+        }
+    }
+
+    private void acceptLoop(ServerSocketChannel server, ExecutorService connectionWorkers) {
+        while (server.isOpen()) {
+            SocketChannel client;
+            try {
+                client = server.accept();
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                Log.w(TAG, "Accept failed: " + e.getMessage());
+                continue;
+            }
+            try {
+                connectionWorkers.execute(() -> handle(client));
+            } catch (RejectedExecutionException e) {
+                // Stopped meanwhile
+                closeQuietly(client);
+            }
+        }
+    }
+
+    private void handle(SocketChannel client) {
+        try {
+            client.socket().setSoTimeout(SOCKET_TIMEOUT_MS);
+            // GET and HEAD requests have no body, so reading ahead past the header is harmless
+            String header = readHeader(new BufferedInputStream(client.socket().getInputStream()));
+            if (header == null) {
+                return;
+            }
+            String[] lines = header.split("\r\n");
+            String[] requestLine = lines[0].split(" ");
+            if (requestLine.length < 2) {
+                sendStatus(client, 400, "Bad Request", "");
+                return;
+            }
+            String method = requestLine[0];
+            String target = requestLine[1];
+            String authorization = null;
+            String range = null;
+            String origin = null;
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon <= 0) {
+                    continue;
+                }
+                String name = lines[i].substring(0, colon).trim().toLowerCase(Locale.US);
+                String value = lines[i].substring(colon + 1).trim();
+                if (name.equals("authorization")) {
+                    authorization = value;
+                } else if (name.equals("range")) {
+                    range = value;
+                } else if (name.equals("origin")) {
+                    origin = value;
+                }
+            }
+
+            String cors = corsHeaders(origin);
+            if (method.equals("OPTIONS")) {
+                send(client, "HTTP/1.1 204 No Content\r\n"
+                        + cors
+                        + "Access-Control-Allow-Methods: GET, HEAD, OPTIONS\r\n"
+                        + "Access-Control-Allow-Headers: Authorization, Range\r\n"
+                        + "Access-Control-Allow-Private-Network: true\r\n"
+                        + "Access-Control-Max-Age: 600\r\n"
+                        + "Content-Length: 0\r\n"
+                        + "Connection: close\r\n\r\n");
+                return;
+            }
+            if (!method.equals("GET") && !method.equals("HEAD")) {
+                sendStatus(client, 405, "Method Not Allowed", cors);
+                return;
+            }
+
+            int query = target.indexOf('?');
+            String path = query >= 0 ? target.substring(0, query) : target;
+            String requestToken = null;
+            if (authorization != null && authorization.startsWith("Bearer ")) {
+                requestToken = authorization.substring("Bearer ".length()).trim();
+            } else if (query >= 0) {
+                for (String parameter : target.substring(query + 1).split("&")) {
+                    if (parameter.startsWith("token=")) {
+                        requestToken = parameter.substring("token=".length());
+                    }
+                }
+            }
+
+            boolean authorized;
+            Resource resource;
+            synchronized (this) {
+                // Constant-time comparison, the token is the only protection against other apps
+                authorized = token != null && requestToken != null && MessageDigest.isEqual(
+                        token.getBytes(StandardCharsets.US_ASCII), requestToken.getBytes(StandardCharsets.US_ASCII));
+                resource = authorized ? resources.get(path.startsWith("/") ? path.substring(1) : path) : null;
+            }
+            if (!authorized) {
+                sendStatus(client, 401, "Unauthorized", cors);
+                return;
+            }
+            if (resource == null) {
+                sendStatus(client, 404, "Not Found", cors);
+                return;
+            }
+            sendResource(client, resource, range, method.equals("HEAD"), cors);
+        } catch (IOException e) {
+            // Client went away or timed out
+            Log.d(TAG, "Connection closed: " + e.getMessage());
+        } finally {
+            closeQuietly(client);
+        }
+    }
+
+    private void sendResource(SocketChannel client, Resource resource, String range, boolean headOnly, String cors) throws IOException {
+        FileInputStream input;
+        try {
+            input = openResource(resource);
+        } catch (FileNotFoundException e) {
+            sendStatus(client, 404, "Not Found", cors);
+            return;
+        }
+        try (FileChannel file = input.getChannel()) {
+            long size = file.size();
+            long start = 0;
+            long end = size - 1;
+            boolean partial = false;
+            if (range != null && range.startsWith("bytes=") && !range.contains(",")) {
+                String[] bounds = range.substring("bytes=".length()).split("-", -1);
+                try {
+                    if (bounds[0].isEmpty()) {
+                        // Suffix range: the last n bytes
+                        start = Math.max(0, size - Long.parseLong(bounds[1]));
+                    } else {
+                        start = Long.parseLong(bounds[0]);
+                        if (!bounds[1].isEmpty()) {
+                            end = Math.min(end, Long.parseLong(bounds[1]));
+                        }
+                    }
+                    partial = true;
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    partial = false;
+                    start = 0;
+                    end = size - 1;
+                }
+                if (partial && (start >= size || start > end)) {
+                    send(client, "HTTP/1.1 416 Range Not Satisfiable\r\n"
+                            + cors
+                            + "Content-Range: bytes */" + size + "\r\n"
+                            + "Content-Length: 0\r\n"
+                            + "Connection: close\r\n\r\n");
+                    return;
+                }
+            }
+            long length = Math.max(0, end - start + 1);
+
+            StringBuilder headers = new StringBuilder();
+            headers.append(partial ? "HTTP/1.1 206 Partial Content\r\n" : "HTTP/1.1 200 OK\r\n");
+            headers.append(cors);
+            headers.append("Content-Type: ").append(resource.mimeType).append("\r\n");
+            headers.append("Content-Length: ").append(length).append("\r\n");
+            if (partial) {
+                headers.append("Content-Range: bytes ").append(start).append('-').append(end)
+                        .append('/').append(size).append("\r\n");
+            }
+            headers.append("Accept-Ranges: bytes\r\n");
+            headers.append("Cache-Control: no-store\r\n");
+            headers.append("Connection: close\r\n\r\n");
+            send(client, headers.toString());
+
+            if (!headOnly) {
+                // Zero-copy from the file to the socket
+                long position = start;
+                long remaining = length;
+                while (remaining > 0) {
+                    long sent = file.transferTo(position, remaining, client);
+                    if (sent <= 0) {
+                        break;
+                    }
+                    position += sent;
+                    remaining -= sent;
+                }
+            }
+        }
+    }
+
+    private FileInputStream openResource(Resource resource) throws FileNotFoundException {
+        if (resource.file != null) {
+            return new FileInputStream(resource.file);
+        }
+        ParcelFileDescriptor descriptor = context.getContentResolver().openFileDescriptor(resource.uri, "r");
+        if (descriptor == null) {
+            throw new FileNotFoundException(resource.uri.toString());
+        }
+        return new ParcelFileDescriptor.AutoCloseInputStream(descriptor);
+    }
+
+    /** Reads the request line and headers, up to the blank line. Null if the client sent nothing. */
+    private static String readHeader(InputStream input) throws IOException {
+        byte[] buffer = new byte[MAX_HEADER_BYTES];
+        int length = 0;
+        while (length < buffer.length) {
+            int value = input.read();
+            if (value < 0) {
+                return length > 0 ? new String(buffer, 0, length, StandardCharsets.US_ASCII) : null;
+            }
+            buffer[length++] = (byte) value;
+            if (length >= 4 && buffer[length - 4] == '\r' && buffer[length - 3] == '\n'
+                    && buffer[length - 2] == '\r' && buffer[length - 1] == '\n') {
+                return new String(buffer, 0, length - 4, StandardCharsets.US_ASCII);
+            }
+        }
+        throw new IOException("Request header too large");
+    }
+
+    /** CORS headers for a request from the given origin, allowing only the web view's origin */
+    private String corsHeaders(String origin) {
+        if (origin == null || !origin.equals(allowedOrigin)) {
+            return "Vary: Origin\r\n";
+        }
+        return "Access-Control-Allow-Origin: " + origin + "\r\n"
+                + "Access-Control-Expose-Headers: Content-Length, Content-Range\r\n"
+                + "Vary: Origin\r\n";
+    }
+
+    private static void sendStatus(SocketChannel client, int code, String reason, String cors) throws IOException {
+        byte[] body = reason.getBytes(StandardCharsets.US_ASCII);
+        send(client, "HTTP/1.1 " + code + " " + reason + "\r\n"
+                + cors
+                + "Content-Type: text/plain\r\n"
+                + "Content-Length: " + body.length + "\r\n"
+                + "Connection: close\r\n\r\n"
+                + reason);
+    }
+
+    private static void send(SocketChannel client, String text) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+        while (buffer.hasRemaining()) {
+            client.write(buffer);
+        }
+    }
+
+    private static void closeQuietly(SocketChannel client) {
+        try {
+            client.close();
+        } catch (IOException e) {
+            // Nothing left to do
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.tonyxlh.capacitor.camera;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Bounded pool of {@link InterpreterSlot}s sharing one model.
+ *
+ * <p>Live camera frames and on-demand requests (e.g. {@code detectBlur}) can run inference at the
+ * same time, each on its own interpreter and buffers. When every slot is busy, callers wait; live
+ * requests are served before on-demand ones so the analyzer is not held up by a queue of calls.
+ */
+public class InterpreterPool {
+    private final InterpreterSlot[] slots;
+    private final ArrayDeque<InterpreterSlot> idleSlots = new ArrayDeque<>();
+    private int waitingLive = 0;
+    private boolean closed = false;
+
+    /**
+     * @param model model file, shared by all the interpreters
+     * @param size number of interpreters
+     * @param config threads and XNNPACK setting of each interpreter
+     */
+    public InterpreterPool(ByteBuffer model, int size, InterpreterTuner.Config config) {
+        slots = new InterpreterSlot[Math.max(1, size)];
+        try {
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] = new InterpreterSlot(model, InterpreterTuner.createOptions(config));
+                idleSlots.add(slots[i]);
+            }
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public int size() {
+        return slots.length;
+    }
+
+    /** Any slot, to read the model properties shared by all of them. */
+    public InterpreterSlot peek() {
+        return slots[0];
+    }
+
+    /**
+     * Borrows an idle slot, waiting for one if needed. Live requests go ahead of waiting on-demand
+     * requests.
+     * @param live true for live camera frames
+     * @return the slot, or null once the pool is closed
+     */
+    public synchronized InterpreterSlot acquire(boolean live) throws InterruptedException {
+        if (live) {
+            waitingLive++;
+        }
+        try {
+            while (!closed && (idleSlots.isEmpty() || (!live && waitingLive > 0))) {
+                wait();
+            }
+            return closed ? null : idleSlots.pollFirst();
+        } finally {
+            if (live) {
+                waitingLive--;
+                // On-demand requests held back for this one may proceed
+                notifyAll();
+            }
+        }
+    }
+
+    /** Returns a slot obtained from {@link #acquire}. Slots released after close are closed. */
+    public synchronized void release(InterpreterSlot slot) {
+        if (slot == null) {
+            return;
+        }
+        if (closed) {
+            slot.close();
+            return;
+        }
+        idleSlots.addFirst(slot);
+        notifyAll();
+    }
+
+    /** Closes idle interpreters now and busy ones as soon as they are released. */
+    public synchronized void close() {
+        closed = true;
+        for (InterpreterSlot slot : idleSlots) {
+            slot.close();
+        }
+        idleSlots.clear();
+        notifyAll();
+    }
+}
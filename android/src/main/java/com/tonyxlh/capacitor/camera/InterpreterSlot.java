@@ -0,0 +1,382 @@
+package com.tonyxlh.capacitor.camera;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+import androidx.camera.core.ImageProxy;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One TFLite interpreter together with the input/output tensors and scratch buffers it works on.
+ *
+ * <p>A slot is not thread-safe: it is borrowed from an {@link InterpreterPool}, used by a single
+ * thread for one inference and given back. The image fed to the model is the upright center of the
+ * picture at native resolution, cropped to the model input size or padded with black when smaller.
+ *
+ * <p>Several images can be classified by a single inference with {@link #runBatch}, which reuses
+ * batch buffers allocated once and resizes the input tensor only when the batch size changes.
+ */
+public class InterpreterSlot {
+    /** Most images classified by one {@link #runBatch} call, bounds the batch input to ~5 MB for float models */
+    public static final int MAX_BATCH_SIZE = 8;
+
+    // Channel value to normalized [0,1] float, avoids a division per channel
+    private static final float[] NORMALIZE_LUT = new float[256];
+    static {
+        for (int i = 0; i < 256; i++) {
+            NORMALIZE_LUT[i] = i / 255.0f;
+        }
+    }
+
+    private final Interpreter interpreter;
+    private final int inputWidth;
+    private final int inputHeight;
+    private final DataType inputDataType;
+    private final DataType outputDataType;
+    // Channel value to the quantized input byte of int8/uint8 models
+    private final byte[] quantizeLut;
+    // Output quantization, a scale of 0 meaning the raw values are used
+    private final float outputScale;
+    private final int outputZeroPoint;
+
+    // Preallocated tensors and tile, reused by every inference
+    private final ByteBuffer inputBuffer;
+    private final FloatBuffer inputFloats;
+    private final ByteBuffer outputBuffer;
+    private final Tile tile;
+    // Batch buffers of runBatch, allocated on first use for MAX_BATCH_SIZE images
+    private ByteBuffer batchInput;
+    private ByteBuffer batchOutput;
+    // Batch size the input tensor is currently shaped for, and its shape for a single image
+    private int batchSize = 1;
+    private final int[] singleShape;
+
+    public InterpreterSlot(ByteBuffer model, Interpreter.Options options) {
+        interpreter = new Interpreter(model, options);
+        Tensor inputTensor = interpreter.getInputTensor(0);
+        Tensor outputTensor = interpreter.getOutputTensor(0);
+        inputDataType = inputTensor.dataType();
+        outputDataType = outputTensor.dataType();
+        quantizeLut = inputDataType == DataType.FLOAT32 ? null : createQuantizeLut(inputTensor);
+        Tensor.QuantizationParams outputParams = outputTensor.quantizationParams();
+        outputScale = outputDataType == DataType.FLOAT32 ? 0f : outputParams.getScale();
+        outputZeroPoint = outputParams.getZeroPoint();
+
+        // Expected format: [batch, height, width, channels]
+        int[] inputShape = inputTensor.shape();
+        singleShape = inputShape;
+        inputHeight = inputShape.length >= 3 ? inputShape[1] : 224;
+        inputWidth = inputShape.length >= 3 ? inputShape[2] : 224;
+
+        // Same data types as the model so inference never converts or copies the tensors again
+        inputBuffer = ByteBuffer.allocateDirect(getInputBytes()).order(ByteOrder.nativeOrder());
+        inputFloats = inputDataType == DataType.FLOAT32 ? inputBuffer.asFloatBuffer() : null;
+        outputBuffer = ByteBuffer.allocateDirect(outputTensor.numBytes()).order(ByteOrder.nativeOrder());
+        tile = new Tile();
+    }
+
+    /**
+     * Maps channel values to input bytes. Quantized models expect the same [0,1] input as the float
+     * model, stored as {@code round(value / scale) + zeroPoint}; models without quantization
+     * parameters get the raw channel value (shifted by 128 for int8).
+     */
+    private static byte[] createQuantizeLut(Tensor inputTensor) {
+        Tensor.QuantizationParams params = inputTensor.quantizationParams();
+        boolean signed = inputTensor.dataType() == DataType.INT8;
+        int min = signed ? -128 : 0;
+        int max = signed ? 127 : 255;
+        byte[] lut = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            int value;
+            if (params.getScale() > 0) {
+                value = Math.round(NORMALIZE_LUT[i] / params.getScale()) + params.getZeroPoint();
+            } else {
+                value = signed ? i - 128 : i;
+            }
+            lut[i] = (byte) Math.max(min, Math.min(max, value));
+        }
+        return lut;
+    }
+
+    /** Size in bytes of the input of one image. */
+    private int getInputBytes() {
+        int values = inputWidth * inputHeight * 3;
+        return inputDataType == DataType.FLOAT32 ? values * 4 : values;
+    }
+
+    public int getInputWidth() {
+        return inputWidth;
+    }
+
+    public int getInputHeight() {
+        return inputHeight;
+    }
+
+    /**
+     * Copies the center of the bitmap, cropped to at most the model input size, into the tile.
+     */
+    public void loadTile(Bitmap bitmap) {
+        tile.load(bitmap);
+    }
+
+    /**
+     * Converts the center of a YUV_420_888 frame straight into the tile: only the pixels the model
+     * sees are converted and rotated upright, no full-frame Bitmap is built.
+     * @param region part of the frame to look at, in sensor coordinates
+     */
+    public void loadTile(ImageProxy.PlaneProxy[] planes, Rect region, int rotationDegrees) {
+        boolean swapped = rotationDegrees == 90 || rotationDegrees == 270;
+        // Model input size expressed in sensor orientation
+        int sensorWidth = Math.min(region.width(), swapped ? inputHeight : inputWidth);
+        int sensorHeight = Math.min(region.height(), swapped ? inputWidth : inputHeight);
+        int left = region.left + (region.width() - sensorWidth) / 2;
+        int top = region.top + (region.height() - sensorHeight) / 2;
+        Rect center = new Rect(left, top, left + sensorWidth, top + sensorHeight);
+        BitmapUtils.yuv420ToArgb(planes, center, rotationDegrees, false, false, 1, tile.pixels);
+        tile.width = swapped ? sensorHeight : sensorWidth;
+        tile.height = swapped ? sensorWidth : sensorHeight;
+    }
+
+    /** Writes the tile into the input tensor. */
+    public void fillInput() {
+        inputBuffer.clear();
+        if (inputFloats != null) {
+            inputFloats.clear();
+        }
+        tile.write(inputBuffer, inputFloats);
+        inputBuffer.rewind();
+    }
+
+    /**
+     * Writes the center of an upright image prepared elsewhere, e.g. a tile shared by several
+     * models, into the input tensor, cropping it to the model input size or padding it.
+     * @param pixels ARGB pixels, {@code width} per row
+     */
+    public void fillInput(int[] pixels, int width, int height) {
+        int copyWidth = Math.min(width, inputWidth);
+        int copyHeight = Math.min(height, inputHeight);
+        int offset = (height - copyHeight) / 2 * width + (width - copyWidth) / 2;
+        inputBuffer.clear();
+        if (inputFloats != null) {
+            inputFloats.clear();
+        }
+        tile.write(pixels, width, offset, copyWidth, copyHeight, inputBuffer, inputFloats);
+        inputBuffer.rewind();
+    }
+
+    // Rows above/below an image smaller than the model input are padded with black
+    private static void putZeros(FloatBuffer buffer, int count) {
+        for (int i = 0; i < count; i++) {
+            buffer.put(0f);
+        }
+    }
+
+    private static void putBlack(ByteBuffer buffer, int count, byte black) {
+        for (int i = 0; i < count; i++) {
+            buffer.put(black);
+        }
+    }
+
+    /** Runs the model once on a black input, e.g. to warm it up before the first real image. */
+    public void warmUp() {
+        tile.width = 0;
+        tile.height = 0;
+        fillInput();
+        run();
+    }
+
+    /**
+     * Runs the model on the input tensor. Uses only the preallocated buffers, so steady-state calls
+     * do not allocate.
+     */
+    public void run() {
+        resizeBatch(1);
+        outputBuffer.rewind();
+        interpreter.run(inputBuffer, outputBuffer);
+    }
+
+    /**
+     * Value of the output tensor at {@code index} after {@link #run()}, dequantized for int8/uint8
+     * outputs, 0 if out of range.
+     */
+    public float getOutput(int index) {
+        return readOutput(outputBuffer, index);
+    }
+
+    /** Number of values in the output tensor of a single image. */
+    public int getOutputCount() {
+        return getOutputCount(outputBuffer);
+    }
+
+    private int getOutputCount(ByteBuffer output) {
+        return outputDataType == DataType.FLOAT32 ? output.capacity() / 4 : output.capacity();
+    }
+
+    private float readOutput(ByteBuffer output, int index) {
+        if (index >= getOutputCount(output)) {
+            return 0f;
+        }
+        if (outputDataType == DataType.FLOAT32) {
+            return output.getFloat(index * 4);
+        }
+        int value = outputDataType == DataType.INT8 ? output.get(index) : output.get(index) & 0xFF;
+        return outputScale > 0 ? (value - outputZeroPoint) * outputScale : value;
+    }
+
+    /**
+     * Classifies several images with one inference. The input tensor is resized to a batch of
+     * {@code bitmaps.size()} when that differs from the previous call, the images are preprocessed
+     * in parallel on {@link ParallelWorkers} into batch buffers allocated once for
+     * {@link #MAX_BATCH_SIZE} images, and the tensor goes back to a single image on the next
+     * {@link #run()}.
+     * @param bitmaps at most {@link #MAX_BATCH_SIZE} images
+     * @param outputs receives the first {@code outputs[i].length} outputs of image i
+     */
+    public void runBatch(List<Bitmap> bitmaps, float[][] outputs) {
+        int count = bitmaps.size();
+        if (count > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Batch of " + count + " images, at most " + MAX_BATCH_SIZE);
+        }
+        resizeBatch(count);
+        int imageBytes = getInputBytes();
+        if (batchInput == null) {
+            batchInput = ByteBuffer.allocateDirect(imageBytes * MAX_BATCH_SIZE).order(ByteOrder.nativeOrder());
+            batchOutput = ByteBuffer.allocateDirect(outputBuffer.capacity() * MAX_BATCH_SIZE).order(ByteOrder.nativeOrder());
+        }
+
+        // Views over the first count images, the interpreter expects buffers of the exact tensor size
+        batchInput.clear();
+        batchInput.limit(imageBytes * count);
+        ByteBuffer input = batchInput.slice().order(ByteOrder.nativeOrder());
+        batchOutput.clear();
+        batchOutput.limit(outputBuffer.capacity() * count);
+        ByteBuffer output = batchOutput.slice().order(ByteOrder.nativeOrder());
+
+        ParallelWorkers.runStripes(count, 1, (start, end) -> {
+            // Each stripe needs its own tile and row scratch
+            Tile stripeTile = new Tile();
+            for (int i = start; i < end; i++) {
+                stripeTile.load(bitmaps.get(i));
+                ByteBuffer target = input.duplicate();
+                target.position(i * imageBytes);
+                target.limit((i + 1) * imageBytes);
+                ByteBuffer image = target.slice().order(ByteOrder.nativeOrder());
+                stripeTile.write(image, inputFloats != null ? image.asFloatBuffer() : null);
+            }
+        });
+
+        interpreter.run(input, output);
+
+        int outputsPerImage = getOutputCount(output) / count;
+        for (int i = 0; i < count; i++) {
+            for (int k = 0; k < outputs[i].length; k++) {
+                outputs[i][k] = k < outputsPerImage ? readOutput(output, i * outputsPerImage + k) : 0f;
+            }
+        }
+    }
+
+    /** Resizes the input tensor to a batch of {@code count} images, if it is not already. */
+    private void resizeBatch(int count) {
+        if (count == batchSize) {
+            return;
+        }
+        interpreter.resizeInput(0, count == 1 ? singleShape : new int[]{count, inputHeight, inputWidth, 3});
+        interpreter.allocateTensors();
+        batchSize = count;
+    }
+
+    /**
+     * Upright center of an image, at most the model input size, with the row scratch used to write
+     * it into an input tensor.
+     */
+    private class Tile {
+        final int[] pixels = new int[inputWidth * inputHeight];
+        int width;
+        int height;
+        final float[] rowFloats = inputDataType == DataType.FLOAT32 ? new float[inputWidth * 3] : null;
+        final byte[] rowBytes = inputDataType == DataType.FLOAT32 ? null : new byte[inputWidth * 3];
+
+        void load(Bitmap bitmap) {
+            int bitmapWidth = bitmap.getWidth();
+            int bitmapHeight = bitmap.getHeight();
+            // Center crop when the bitmap is larger, center pad when it is smaller
+            width = Math.min(bitmapWidth, inputWidth);
+            height = Math.min(bitmapHeight, inputHeight);
+            bitmap.getPixels(pixels, 0, width, (bitmapWidth - width) / 2, (bitmapHeight - height) / 2,
+                    width, height);
+        }
+
+        /**
+         * Writes the tile at the position of {@code target} in a single pass, centered and padded
+         * with black when smaller than the model input, and normalized to [0,1] for float models
+         * or quantized with the input tensor parameters for int8/uint8 models.
+         * @param target native-order buffer with room for one image
+         * @param targetFloats float view of {@code target} at the same position, for float models
+         */
+        void write(ByteBuffer target, FloatBuffer targetFloats) {
+            write(pixels, width, 0, width, height, target, targetFloats);
+        }
+
+        /**
+         * Same as {@link #write(ByteBuffer, FloatBuffer)} for a {@code width x height} area of another
+         * pixel array, starting at {@code offset} with rows {@code stride} pixels apart. The area
+         * must not be larger than the model input.
+         */
+        void write(int[] source, int stride, int offset, int width, int height,
+                   ByteBuffer target, FloatBuffer targetFloats) {
+            int dstLeft = (inputWidth - width) / 2;
+            int dstTop = (inputHeight - height) / 2;
+            boolean isFloat = inputDataType == DataType.FLOAT32;
+
+            if (isFloat) {
+                Arrays.fill(rowFloats, 0f);
+            } else {
+                // Black is not necessarily byte 0 once quantized
+                Arrays.fill(rowBytes, quantizeLut[0]);
+            }
+            for (int y = 0; y < inputHeight; y++) {
+                int srcY = y - dstTop;
+                boolean inside = srcY >= 0 && srcY < height;
+                int srcPos = offset + srcY * stride;
+                if (isFloat) {
+                    if (inside) {
+                        for (int x = 0, i = dstLeft * 3; x < width; x++, i += 3) {
+                            int pixel = source[srcPos + x];
+                            rowFloats[i] = NORMALIZE_LUT[(pixel >> 16) & 0xFF];
+                            rowFloats[i + 1] = NORMALIZE_LUT[(pixel >> 8) & 0xFF];
+                            rowFloats[i + 2] = NORMALIZE_LUT[pixel & 0xFF];
+                        }
+                        targetFloats.put(rowFloats);
+                    } else {
+                        putZeros(targetFloats, inputWidth * 3);
+                    }
+                } else {
+                    if (inside) {
+                        for (int x = 0, i = dstLeft * 3; x < width; x++, i += 3) {
+                            int pixel = source[srcPos + x];
+                            rowBytes[i] = quantizeLut[(pixel >> 16) & 0xFF];
+                            rowBytes[i + 1] = quantizeLut[(pixel >> 8) & 0xFF];
+                            rowBytes[i + 2] = quantizeLut[pixel & 0xFF];
+                        }
+                        target.put(rowBytes);
+                    } else {
+                        putBlack(target, inputWidth * 3, quantizeLut[0]);
+                    }
+                }
+            }
+        }
+    }
+
+    public void close() {
+        interpreter.close();
+    }
+}
@@ -0,0 +1,147 @@
+package com.tonyxlh.capacitor.camera;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Picks the interpreter thread count and XNNPACK setting for this device.
+ *
+ * <p>The best configuration depends on the SoC: a fixed thread count is too many for some cores
+ * and too few for others. The first initialization runs a short benchmark of the candidates on a
+ * blank input and saves the fastest one in SharedPreferences, keyed by model checksum, device and
+ * number of interpreters; later initializations read it back.
+ */
+public class InterpreterTuner {
+    private static final String TAG = "InterpreterTuner";
+    private static final String PREFS_NAME = "CameraPreviewInterpreterTuning";
+    private static final int MAX_THREADS = 8;
+    private static final int BENCHMARK_RUNS = 3;
+
+    /** Interpreter settings chosen for this device. */
+    public static class Config {
+        public final int numThreads;
+        public final boolean useXnnpack;
+
+        public Config(int numThreads, boolean useXnnpack) {
+            this.numThreads = numThreads;
+            this.useXnnpack = useXnnpack;
+        }
+
+        @Override
+        public String toString() {
+            return numThreads + " thread(s), XNNPACK " + (useXnnpack ? "on" : "off");
+        }
+    }
+
+    private InterpreterTuner() {}
+
+    /**
+     * Returns the saved configuration for this model and device, running the benchmark first if
+     * there is none. Meant to be called off the UI thread.
+     * @param interpreterCount number of interpreters that will run concurrently, which bounds the
+     *     threads each of them may use
+     */
+    public static Config loadOrCalibrate(Context context, ByteBuffer model, int interpreterCount) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String key = getKey(model, interpreterCount);
+        int savedThreads = prefs.getInt(key + "_threads", 0);
+        if (savedThreads > 0) {
+            Config config = new Config(savedThreads, prefs.getBoolean(key + "_xnnpack", true));
+            Log.d(TAG, "Using saved interpreter configuration: " + config);
+            return config;
+        }
+
+        Config config = calibrate(model, interpreterCount);
+        prefs.edit()
+                .putInt(key + "_threads", config.numThreads)
+                .putBoolean(key + "_xnnpack", config.useXnnpack)
+                .apply();
+        return config;
+    }
+
+    /** Times every candidate configuration and returns the fastest one. */
+    private static Config calibrate(ByteBuffer model, int interpreterCount) {
+        int maxThreads = Math.max(1, Math.min(MAX_THREADS,
+                Runtime.getRuntime().availableProcessors() / Math.max(1, interpreterCount)));
+        List<Integer> threadCounts = new ArrayList<>();
+        for (int threads = 1; threads < maxThreads; threads *= 2) {
+            threadCounts.add(threads);
+        }
+        threadCounts.add(maxThreads);
+
+        Config best = new Config(maxThreads, true);
+        long bestTime = Long.MAX_VALUE;
+        for (boolean useXnnpack : new boolean[]{true, false}) {
+            for (int threads : threadCounts) {
+                Config candidate = new Config(threads, useXnnpack);
+                long time;
+                try {
+                    time = benchmark(model, candidate);
+                } catch (Exception e) {
+                    Log.d(TAG, "Skipping " + candidate + ": " + e.getMessage());
+                    continue;
+                }
+                Log.d(TAG, candidate + ": " + time / 1000 + " us");
+                if (time < bestTime) {
+                    bestTime = time;
+                    best = candidate;
+                }
+            }
+        }
+        Log.d(TAG, "Calibrated interpreter configuration: " + best);
+        return best;
+    }
+
+    /** Best of a few timed inferences, after one untimed warm-up run. */
+    private static long benchmark(ByteBuffer model, Config config) {
+        InterpreterSlot slot = new InterpreterSlot(model, createOptions(config));
+        try {
+            slot.warmUp();
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < BENCHMARK_RUNS; i++) {
+                long start = SystemClock.elapsedRealtimeNanos();
+                slot.warmUp();
+                best = Math.min(best, SystemClock.elapsedRealtimeNanos() - start);
+            }
+            return best;
+        } finally {
+            slot.close();
+        }
+    }
+
+    public static Interpreter.Options createOptions(Config config) {
+        Interpreter.Options options = new Interpreter.Options();
+        options.setNumThreads(Math.max(1, config.numThreads));
+        try {
+            options.setUseXNNPACK(config.useXnnpack);
+        } catch (Exception e) {
+            // XNNPACK not available, using CPU
+        }
+        return options;
+    }
+
+    /** Model checksum, device and interpreter count: any change triggers a new calibration. */
+    private static String getKey(ByteBuffer model, int interpreterCount) {
+        CRC32 crc = new CRC32();
+        ByteBuffer data = model.duplicate();
+        data.rewind();
+        byte[] chunk = new byte[64 * 1024];
+        while (data.hasRemaining()) {
+            int length = Math.min(chunk.length, data.remaining());
+            data.get(chunk, 0, length);
+            crc.update(chunk, 0, length);
+        }
+        return Long.toHexString(crc.getValue()) + "_" + Build.MANUFACTURER + "_" + Build.MODEL + "_"
+                + Build.VERSION.SDK_INT + "_" + interpreterCount;
+    }
+}
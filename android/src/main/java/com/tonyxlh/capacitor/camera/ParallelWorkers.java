@@ -0,0 +1,110 @@
+package com.tonyxlh.capacitor.camera;
+
+import android.app.ActivityManager;
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Bounded worker pool used to split frame processing into row stripes.
+ *
+ * <p>The pool is sized to the available cores and shared by the whole plugin. Each stripe writes
+ * to its own part of the output, so results do not depend on how the work was split. Parallel mode
+ * can be switched off, which makes {@link #runStripes} run everything on the calling thread.
+ */
+public class ParallelWorkers {
+    /** Work on the rows [start, end) of a frame. */
+    public interface StripeTask {
+        void run(int start, int end);
+    }
+
+    private static final int MAX_THREADS = 8;
+    private static volatile boolean enabled = true;
+    private static ExecutorService executor;
+
+    private ParallelWorkers() {}
+
+    /** Enables or disables parallel stripes, e.g. on low-end devices. */
+    public static void setEnabled(boolean enabled) {
+        ParallelWorkers.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled && getThreadCount() > 1;
+    }
+
+    /** Number of threads working on a frame, including the calling thread. */
+    public static int getThreadCount() {
+        return Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /** Low-RAM devices and devices with fewer than 4 cores gain little from parallel stripes. */
+    public static boolean isLowEndDevice(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        boolean lowRam = activityManager != null && activityManager.isLowRamDevice();
+        return lowRam || Runtime.getRuntime().availableProcessors() < 4;
+    }
+
+    /** Shared pool with one thread less than {@link #getThreadCount()}, the caller being the last one. */
+    public static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(Math.max(1, getThreadCount() - 1), runnable -> {
+                Thread thread = new Thread(runnable, "CameraPreview-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Splits [0, count) into contiguous stripes of at least {@code minStripe} rows and runs them
+     * concurrently, returning once all of them are done.
+     */
+    public static void runStripes(int count, int minStripe, StripeTask task) {
+        int stripes = isEnabled() ? Math.min(getThreadCount(), count / Math.max(1, minStripe)) : 1;
+        if (stripes <= 1) {
+            task.run(0, count);
+            return;
+        }
+
+        List<Future<?>> futures = new ArrayList<>(stripes - 1);
+        ExecutorService pool = getExecutor();
+        for (int i = 1; i < stripes; i++) {
+            final int start = count * i / stripes;
+            final int end = count * (i + 1) / stripes;
+            futures.add(pool.submit(() -> task.run(start, end)));
+        }
+        RuntimeException failure = null;
+        try {
+            // The calling thread takes the first stripe itself.
+            task.run(0, count / stripes);
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException
+                            ? (RuntimeException) e.getCause()
+                            : new RuntimeException(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (failure == null) {
+                    failure = new RuntimeException(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
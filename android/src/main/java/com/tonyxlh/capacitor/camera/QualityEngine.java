@@ -0,0 +1,285 @@
+package com.tonyxlh.capacitor.camera;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.util.Log;
+
+import androidx.camera.core.ImageProxy;
+
+import org.tensorflow.lite.support.common.FileUtil;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry of image-quality models (blur, glare, document presence...) evaluated together.
+ *
+ * <p>Every model looks at the upright center of the image. Instead of preprocessing the image once
+ * per model, the center is converted once at the largest input size among the loaded models and
+ * each model crops its own input from that shared tile. Each model has its own
+ * {@link InterpreterPool} and a {@link Verdict}; models loaded from a file fail the verdict when
+ * the score of their fail class reaches a threshold. The blur model of {@link BlurDetectionHelper}
+ * is registered here too, with its own pool and rule, so it shares the conversion.
+ */
+public class QualityEngine {
+    private static final String TAG = "QualityEngine";
+
+    /** Outcome of one model. */
+    public static class ModelResult {
+        public final String name;
+        public final float[] scores;
+        /** Index of the highest score. */
+        public final int index;
+        /** Label of the highest score, null if the model has no labels. */
+        public final String label;
+        public final boolean pass;
+
+        ModelResult(String name, float[] scores, int index, String label, boolean pass) {
+            this.name = name;
+            this.scores = scores;
+            this.index = index;
+            this.label = label;
+            this.pass = pass;
+        }
+    }
+
+    /** Decides whether the scores of a model pass. */
+    public interface Verdict {
+        boolean passes(float[] scores);
+    }
+
+    private static class Model {
+        final String name;
+        final InterpreterPool pool;
+        final String[] labels;
+        final Verdict verdict;
+        // Pools registered from outside are closed by their owner, not by the engine
+        final boolean ownsPool;
+
+        Model(String name, InterpreterPool pool, String[] labels, Verdict verdict, boolean ownsPool) {
+            this.name = name;
+            this.pool = pool;
+            this.labels = labels;
+            this.verdict = verdict;
+            this.ownsPool = ownsPool;
+        }
+
+        void close() {
+            if (ownsPool) {
+                pool.close();
+            }
+        }
+    }
+
+    private final Map<String, Model> models = new LinkedHashMap<>();
+    // Shared upright tile, one per calling thread
+    private final ThreadLocal<int[]> sharedTile = new ThreadLocal<>();
+
+    /**
+     * Loads a model, replacing any model registered under the same name. Meant to be called off
+     * the UI thread.
+     * @param source asset name, or absolute path / file:// URL of a model file
+     * @param labels class names, or null
+     * @param failIndex class whose score fails the verdict, -1 for a model that never fails it
+     * @param failThreshold score of the fail class at which the verdict fails
+     * @param interpreterCount interpreters able to run this model at the same time
+     * @return the input width and height of the model
+     */
+    public int[] loadModel(Context context, String name, String source, String[] labels,
+                           int failIndex, float failThreshold, int interpreterCount) throws IOException {
+        MappedByteBuffer buffer = source.startsWith("/") || source.startsWith("file://")
+                ? mapFile(source.startsWith("file://") ? source.substring("file://".length()) : source)
+                : FileUtil.loadMappedFile(context, source);
+        int count = Math.max(1, interpreterCount);
+        InterpreterPool pool = new InterpreterPool(buffer, count,
+                InterpreterTuner.loadOrCalibrate(context, buffer, count));
+        Verdict verdict = scores -> failIndex < 0 || failIndex >= scores.length || scores[failIndex] < failThreshold;
+        register(new Model(name, pool, labels, verdict, true));
+        InterpreterSlot slot = pool.peek();
+        Log.d(TAG, "Loaded quality model " + name + " (" + slot.getInputWidth() + "x" + slot.getInputHeight() + ")");
+        return new int[]{slot.getInputWidth(), slot.getInputHeight()};
+    }
+
+    /**
+     * Registers a model whose interpreters are owned elsewhere, e.g. the blur model. Unloading it
+     * or closing the engine does not close the pool.
+     */
+    public void registerModel(String name, InterpreterPool pool, String[] labels, Verdict verdict) {
+        register(new Model(name, pool, labels, verdict, false));
+    }
+
+    private void register(Model model) {
+        Model previous;
+        synchronized (this) {
+            previous = models.put(model.name, model);
+        }
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    private static MappedByteBuffer mapFile(String path) throws IOException {
+        try (FileInputStream input = new FileInputStream(path); FileChannel channel = input.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /** @return true if a model was registered under this name */
+    public boolean unloadModel(String name) {
+        Model model;
+        synchronized (this) {
+            model = models.remove(name);
+        }
+        if (model != null) {
+            model.close();
+        }
+        return model != null;
+    }
+
+    public synchronized boolean hasModels() {
+        return !models.isEmpty();
+    }
+
+    private synchronized Model[] getModels() {
+        return models.values().toArray(new Model[0]);
+    }
+
+    /** Largest input width and height among the models. */
+    private static int[] getTileSize(Model[] models) {
+        int width = 0;
+        int height = 0;
+        for (Model model : models) {
+            width = Math.max(width, model.pool.peek().getInputWidth());
+            height = Math.max(height, model.pool.peek().getInputHeight());
+        }
+        return new int[]{width, height};
+    }
+
+    private int[] getSharedTile(int size) {
+        int[] tile = sharedTile.get();
+        if (tile == null || tile.length < size) {
+            tile = new int[size];
+            sharedTile.set(tile);
+        }
+        return tile;
+    }
+
+    /**
+     * Evaluates every model on a live YUV_420_888 frame. Only the center of the frame is converted,
+     * once, for all the models.
+     * @param region part of the frame to look at, in sensor coordinates
+     * @param rotationDegrees rotation making the frame upright
+     */
+    public List<ModelResult> evaluate(ImageProxy.PlaneProxy[] planes, Rect region, int rotationDegrees) {
+        Model[] current = getModels();
+        if (current.length == 0) {
+            return new ArrayList<>();
+        }
+        int[] size = getTileSize(current);
+        boolean swapped = rotationDegrees == 90 || rotationDegrees == 270;
+        int sensorWidth = Math.min(region.width(), swapped ? size[1] : size[0]);
+        int sensorHeight = Math.min(region.height(), swapped ? size[0] : size[1]);
+        int left = region.left + (region.width() - sensorWidth) / 2;
+        int top = region.top + (region.height() - sensorHeight) / 2;
+        int[] tile = getSharedTile(sensorWidth * sensorHeight);
+        BitmapUtils.yuv420ToArgb(planes, new Rect(left, top, left + sensorWidth, top + sensorHeight),
+                rotationDegrees, false, false, 1, tile);
+        return evaluate(current, tile, swapped ? sensorHeight : sensorWidth, swapped ? sensorWidth : sensorHeight, true);
+    }
+
+    /**
+     * Evaluates every model on a bitmap
+     * @param live true for live frames, which are served before on-demand requests
+     */
+    public List<ModelResult> evaluate(Bitmap bitmap, boolean live) {
+        Model[] current = getModels();
+        if (current.length == 0) {
+            return new ArrayList<>();
+        }
+        int[] size = getTileSize(current);
+        int width = Math.min(bitmap.getWidth(), size[0]);
+        int height = Math.min(bitmap.getHeight(), size[1]);
+        int[] tile = getSharedTile(width * height);
+        bitmap.getPixels(tile, 0, width, (bitmap.getWidth() - width) / 2, (bitmap.getHeight() - height) / 2,
+                width, height);
+        return evaluate(current, tile, width, height, live);
+    }
+
+    private List<ModelResult> evaluate(Model[] current, int[] tile, int width, int height, boolean live) {
+        List<ModelResult> results = new ArrayList<>(current.length);
+        for (Model model : current) {
+            InterpreterSlot slot;
+            try {
+                slot = model.pool.acquire(live);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (slot == null) {
+                // Unloaded meanwhile
+                continue;
+            }
+            float[] scores;
+            try {
+                slot.fillInput(tile, width, height);
+                slot.run();
+                scores = new float[slot.getOutputCount()];
+                for (int i = 0; i < scores.length; i++) {
+                    scores[i] = slot.getOutput(i);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error running quality model " + model.name + ": " + e.getMessage(), e);
+                continue;
+            } finally {
+                model.pool.release(slot);
+            }
+            int best = 0;
+            for (int i = 1; i < scores.length; i++) {
+                if (scores[i] > scores[best]) {
+                    best = i;
+                }
+            }
+            String label = model.labels != null && best < model.labels.length ? model.labels[best] : null;
+            results.add(new ModelResult(model.name, scores, best, label, model.verdict.passes(scores)));
+        }
+        return results;
+    }
+
+    /** Result of the named model, or null if it was not evaluated. */
+    public static ModelResult find(List<ModelResult> results, String name) {
+        for (ModelResult result : results) {
+            if (result.name.equals(name)) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /** Combined verdict: true when no model failed. */
+    public static boolean passes(List<ModelResult> results) {
+        for (ModelResult result : results) {
+            if (!result.pass) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void close() {
+        Model[] current;
+        synchronized (this) {
+            current = models.values().toArray(new Model[0]);
+            models.clear();
+        }
+        for (Model model : current) {
+            model.close();
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.tonyxlh.capacitor.camera;
 
+import android.graphics.Rect;
+
 public class ScanRegion {
     public int top;
     public int bottom;
@@ -13,4 +15,51 @@ public class ScanRegion {
      this.right = right;
      this.measuredByPercentage = measuredByPercentage;
     }
+
+    /**
+     * Maps the region onto the coordinates of the unrotated sensor frame.
+     * The region is expressed on the upright image (after applying rotationDegrees), the same way it
+     * used to be applied to the rotated bitmap, so the frame can be cropped before any conversion.
+     * @return the crop rectangle in sensor coordinates, or null if the region is empty
+     */
+    public Rect toSensorRect(int sensorWidth, int sensorHeight, int rotationDegrees) {
+        boolean swapped = rotationDegrees == 90 || rotationDegrees == 270;
+        int uprightWidth = swapped ? sensorHeight : sensorWidth;
+        int uprightHeight = swapped ? sensorWidth : sensorHeight;
+
+        int l, t, r, b;
+        if (measuredByPercentage == 0) {
+            l = left;
+            t = top;
+            r = right;
+            b = bottom;
+        } else {
+            l = (int) ((double) left / 100 * uprightWidth);
+            t = (int) ((double) top / 100 * uprightHeight);
+            r = l + (int) ((double) right / 100 * uprightWidth - l);
+            b = t + (int) ((double) bottom / 100 * uprightHeight - t);
+        }
+        l = clamp(l, 0, uprightWidth);
+        r = clamp(r, 0, uprightWidth);
+        t = clamp(t, 0, uprightHeight);
+        b = clamp(b, 0, uprightHeight);
+        if (r <= l || b <= t) {
+            return null;
+        }
+
+        switch (rotationDegrees) {
+            case 90:
+                return new Rect(t, sensorHeight - r, b, sensorHeight - l);
+            case 180:
+                return new Rect(sensorWidth - r, sensorHeight - b, sensorWidth - l, sensorHeight - t);
+            case 270:
+                return new Rect(sensorWidth - b, l, sensorWidth - t, r);
+            default:
+                return new Rect(l, t, r, b);
+        }
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
 }
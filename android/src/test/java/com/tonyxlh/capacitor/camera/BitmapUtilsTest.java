@@ -0,0 +1,116 @@
+package com.tonyxlh.capacitor.camera;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class BitmapUtilsTest {
+    private static final int WIDTH = 4;
+    private static final int HEIGHT = 3;
+
+    @Test
+    public void outputMapping_matchesRotationAndFlips() {
+        for (int rotation : new int[] {0, 90, 180, 270}) {
+            for (boolean flipX : new boolean[] {false, true}) {
+                for (boolean flipY : new boolean[] {false, true}) {
+                    assertMapping(rotation, flipX, flipY);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void outputMapping_swapsSizeForQuarterTurns() {
+        BitmapUtils.OutputMapping upright = new BitmapUtils.OutputMapping(WIDTH, HEIGHT, 0, false, false);
+        assertEquals(WIDTH, upright.outputWidth);
+        assertEquals(HEIGHT, upright.outputHeight);
+
+        BitmapUtils.OutputMapping turned = new BitmapUtils.OutputMapping(WIDTH, HEIGHT, 90, false, false);
+        assertEquals(HEIGHT, turned.outputWidth);
+        assertEquals(WIDTH, turned.outputHeight);
+    }
+
+    @Test
+    public void outputMapping_movesCorners() {
+        // Rotating clockwise moves the top left source pixel to the top right
+        assertEquals(HEIGHT - 1, index(new BitmapUtils.OutputMapping(WIDTH, HEIGHT, 90, false, false), 0, 0));
+        // ...and mirroring it afterwards brings it back to the top left
+        assertEquals(0, index(new BitmapUtils.OutputMapping(WIDTH, HEIGHT, 90, true, false), 0, 0));
+        assertEquals(WIDTH * HEIGHT - 1, index(new BitmapUtils.OutputMapping(WIDTH, HEIGHT, 180, false, false), 0, 0));
+        assertEquals((WIDTH - 1) * HEIGHT, index(new BitmapUtils.OutputMapping(WIDTH, HEIGHT, 270, false, false), 0, 0));
+        assertEquals((HEIGHT - 1) * WIDTH, index(new BitmapUtils.OutputMapping(WIDTH, HEIGHT, 0, false, true), 0, 0));
+    }
+
+    @Test
+    public void getSampleStep_fullResolutionWithoutLimits() {
+        assertEquals(1, BitmapUtils.getSampleStep(1920, 1080, 0, 0));
+        assertEquals(1, BitmapUtils.getSampleStep(1920, 1080, 1920, 1));
+        assertEquals(1, BitmapUtils.getSampleStep(1920, 1080, 4000, 0));
+    }
+
+    @Test
+    public void getSampleStep_roundsUpToMaxLength() {
+        assertEquals(3, BitmapUtils.getSampleStep(1920, 1080, 640, 0));
+        assertEquals(4, BitmapUtils.getSampleStep(1921, 1080, 640, 0));
+        // The longest side counts, portrait or landscape
+        assertEquals(3, BitmapUtils.getSampleStep(1080, 1920, 640, 0));
+    }
+
+    @Test
+    public void getSampleStep_roundsScale() {
+        assertEquals(2, BitmapUtils.getSampleStep(1920, 1080, 0, 0.5));
+        assertEquals(3, BitmapUtils.getSampleStep(1920, 1080, 0, 0.3));
+        assertEquals(4, BitmapUtils.getSampleStep(1920, 1080, 0, 0.25));
+    }
+
+    @Test
+    public void getSampleStep_takesCoarserOfBoth() {
+        assertEquals(4, BitmapUtils.getSampleStep(1920, 1080, 960, 0.25));
+        assertEquals(3, BitmapUtils.getSampleStep(1920, 1080, 640, 0.5));
+    }
+
+    /** Checks every source pixel against a plain rotate-then-mirror of its coordinates. */
+    private static void assertMapping(int rotation, boolean flipX, boolean flipY) {
+        BitmapUtils.OutputMapping mapping = new BitmapUtils.OutputMapping(WIDTH, HEIGHT, rotation, flipX, flipY);
+        boolean[] written = new boolean[WIDTH * HEIGHT];
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int col = 0; col < WIDTH; col++) {
+                int x, y;
+                switch (rotation) {
+                    case 90:
+                        x = HEIGHT - 1 - row;
+                        y = col;
+                        break;
+                    case 180:
+                        x = WIDTH - 1 - col;
+                        y = HEIGHT - 1 - row;
+                        break;
+                    case 270:
+                        x = row;
+                        y = WIDTH - 1 - col;
+                        break;
+                    default:
+                        x = col;
+                        y = row;
+                        break;
+                }
+                if (flipX) {
+                    x = mapping.outputWidth - 1 - x;
+                }
+                if (flipY) {
+                    y = mapping.outputHeight - 1 - y;
+                }
+                String message = "rotation " + rotation + ", flipX " + flipX + ", flipY " + flipY
+                        + ", pixel " + col + "," + row;
+                int index = index(mapping, col, row);
+                assertEquals(message, y * mapping.outputWidth + x, index);
+                assertFalse(message, written[index]);
+                written[index] = true;
+            }
+        }
+    }
+
+    private static int index(BitmapUtils.OutputMapping mapping, int col, int row) {
+        return mapping.origin + col * mapping.colStep + row * mapping.rowStep;
+    }
+}
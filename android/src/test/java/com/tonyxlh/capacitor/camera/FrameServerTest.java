@@ -0,0 +1,180 @@
+package com.tonyxlh.capacitor.camera;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Starts a real {@link FrameServer} on the loopback interface and requests it over HTTP.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class FrameServerTest {
+    private static final String ORIGIN = "https://localhost";
+
+    private FrameServer server;
+    private File dir;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new FrameServer(RuntimeEnvironment.getApplication(), ORIGIN);
+        server.start(0);
+        dir = RuntimeEnvironment.getApplication().getCacheDir();
+        content = new byte[100];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void servesWholeFile() throws IOException {
+        String url = server.serveFile(createFile("whole.jpg"), "image/jpeg", false);
+
+        HttpURLConnection connection = open(url);
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("image/jpeg", connection.getContentType());
+        assertEquals(100, connection.getContentLength());
+        assertArrayEquals(content, readAll(connection.getInputStream()));
+    }
+
+    @Test
+    public void servesByteRange() throws IOException {
+        String url = server.serveFile(createFile("range.jpg"), "image/jpeg", false);
+
+        HttpURLConnection connection = open(url);
+        connection.setRequestProperty("Range", "bytes=10-19");
+        assertEquals(206, connection.getResponseCode());
+        assertEquals("bytes 10-19/100", connection.getHeaderField("Content-Range"));
+        assertArrayEquals(Arrays.copyOfRange(content, 10, 20), readAll(connection.getInputStream()));
+
+        connection = open(url);
+        connection.setRequestProperty("Range", "bytes=-5");
+        assertEquals(206, connection.getResponseCode());
+        assertArrayEquals(Arrays.copyOfRange(content, 95, 100), readAll(connection.getInputStream()));
+    }
+
+    @Test
+    public void rejectsUnsatisfiableRange() throws IOException {
+        String url = server.serveFile(createFile("unsatisfiable.jpg"), "image/jpeg", false);
+
+        HttpURLConnection connection = open(url);
+        connection.setRequestProperty("Range", "bytes=100-");
+        assertEquals(416, connection.getResponseCode());
+        assertEquals("bytes */100", connection.getHeaderField("Content-Range"));
+    }
+
+    @Test
+    public void requiresToken() throws IOException {
+        String url = server.serveFile(createFile("token.jpg"), "image/jpeg", false);
+        String withoutToken = url.substring(0, url.indexOf('?'));
+
+        assertEquals(401, open(withoutToken).getResponseCode());
+        assertEquals(401, open(withoutToken + "?token=0123").getResponseCode());
+
+        HttpURLConnection connection = open(withoutToken);
+        connection.setRequestProperty("Authorization", "Bearer " + server.getToken());
+        assertEquals(200, connection.getResponseCode());
+    }
+
+    @Test
+    public void evictsOldestResource() throws IOException {
+        File first = createFile("first.jpg");
+        String firstUrl = server.serveFile(first, "image/jpeg", true);
+        String lastUrl = null;
+        for (int i = 0; i < 64; i++) {
+            lastUrl = server.serveFile(createFile("next" + i + ".jpg"), "image/jpeg", false);
+        }
+
+        assertEquals(404, open(firstUrl).getResponseCode());
+        assertFalse("Owned file is deleted once evicted", first.exists());
+        assertEquals(200, open(lastUrl).getResponseCode());
+    }
+
+    @Test
+    public void allowsOnlyWebViewOrigin() throws IOException {
+        String url = server.serveFile(createFile("cors.jpg"), "image/jpeg", false);
+        String target = url.substring(server.getBaseUrl().length());
+
+        // HttpURLConnection drops the Origin header, so these go over a plain socket
+        String allowed = rawRequest("GET " + target + " HTTP/1.1\r\nOrigin: " + ORIGIN + "\r\n\r\n");
+        assertTrue(allowed.startsWith("HTTP/1.1 200"));
+        assertTrue(allowed.contains("Access-Control-Allow-Origin: " + ORIGIN + "\r\n"));
+
+        String other = rawRequest("GET " + target + " HTTP/1.1\r\nOrigin: https://example.com\r\n\r\n");
+        assertTrue(other.startsWith("HTTP/1.1 200"));
+        assertFalse(other.contains("Access-Control-Allow-Origin"));
+
+        String preflight = rawRequest("OPTIONS " + target + " HTTP/1.1\r\nOrigin: https://example.com\r\n\r\n");
+        assertFalse(preflight.contains("Access-Control-Allow-Origin"));
+    }
+
+    @Test
+    public void stopForgetsResources() throws IOException {
+        File file = createFile("stopped.jpg");
+        server.serveFile(file, "image/jpeg", true);
+
+        server.stop();
+        assertFalse(server.isRunning());
+        assertFalse(file.exists());
+    }
+
+    private File createFile(String name) throws IOException {
+        File file = new File(dir, name);
+        try (OutputStream output = new FileOutputStream(file)) {
+            output.write(content);
+        }
+        return file;
+    }
+
+    private static HttpURLConnection open(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(5000);
+        connection.setReadTimeout(5000);
+        return connection;
+    }
+
+    private String rawRequest(String request) throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write(request.getBytes(StandardCharsets.US_ASCII));
+            socket.getOutputStream().flush();
+            return new String(readAll(socket.getInputStream()), StandardCharsets.US_ASCII);
+        }
+    }
+
+    private static byte[] readAll(InputStream input) throws IOException {
+        try (InputStream in = input) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                output.write(buffer, 0, read);
+            }
+            return output.toByteArray();
+        }
+    }
+}
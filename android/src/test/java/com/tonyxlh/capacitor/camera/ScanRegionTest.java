@@ -0,0 +1,55 @@
+package com.tonyxlh.capacitor.camera;
+
+import static org.junit.Assert.*;
+
+import android.graphics.Rect;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class ScanRegionTest {
+    private static final int SENSOR_WIDTH = 640;
+    private static final int SENSOR_HEIGHT = 480;
+
+    @Test
+    public void toSensorRect_mapsPixelsForEachRotation() {
+        ScanRegion region = new ScanRegion(20, 70, 10, 110, 0);
+        assertEquals(new Rect(10, 20, 110, 70), region.toSensorRect(SENSOR_WIDTH, SENSOR_HEIGHT, 0));
+        assertEquals(new Rect(20, 370, 70, 470), region.toSensorRect(SENSOR_WIDTH, SENSOR_HEIGHT, 90));
+        assertEquals(new Rect(530, 410, 630, 460), region.toSensorRect(SENSOR_WIDTH, SENSOR_HEIGHT, 180));
+        assertEquals(new Rect(570, 10, 620, 110), region.toSensorRect(SENSOR_WIDTH, SENSOR_HEIGHT, 270));
+    }
+
+    @Test
+    public void toSensorRect_measuresPercentagesOnUprightImage() {
+        ScanRegion region = new ScanRegion(20, 80, 10, 90, 1);
+        assertEquals(new Rect(64, 96, 576, 384), region.toSensorRect(SENSOR_WIDTH, SENSOR_HEIGHT, 0));
+        // Upright the frame is 480x640
+        assertEquals(new Rect(128, 48, 512, 432), region.toSensorRect(SENSOR_WIDTH, SENSOR_HEIGHT, 90));
+    }
+
+    @Test
+    public void toSensorRect_clampsToFrame() {
+        ScanRegion pixels = new ScanRegion(-5, 500, -10, 700, 0);
+        assertEquals(new Rect(0, 0, 640, 480), pixels.toSensorRect(SENSOR_WIDTH, SENSOR_HEIGHT, 0));
+        // Upright 480x640: right is clamped to 480, bottom stays 500
+        assertEquals(new Rect(0, 0, 500, 480), pixels.toSensorRect(SENSOR_WIDTH, SENSOR_HEIGHT, 90));
+
+        ScanRegion percentage = new ScanRegion(0, 100, 50, 150, 1);
+        assertEquals(new Rect(320, 0, 640, 480), percentage.toSensorRect(SENSOR_WIDTH, SENSOR_HEIGHT, 0));
+    }
+
+    @Test
+    public void toSensorRect_returnsNullWhenEmpty() {
+        // Entirely outside the frame
+        assertNull(new ScanRegion(0, 100, 700, 800, 0).toSensorRect(SENSOR_WIDTH, SENSOR_HEIGHT, 0));
+        // Right of the left edge
+        assertNull(new ScanRegion(0, 100, 200, 100, 0).toSensorRect(SENSOR_WIDTH, SENSOR_HEIGHT, 0));
+        // No height
+        assertNull(new ScanRegion(50, 50, 0, 100, 0).toSensorRect(SENSOR_WIDTH, SENSOR_HEIGHT, 90));
+    }
+}
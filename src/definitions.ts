@@ -1,9 +1,21 @@
 import { PluginListenerHandle } from "@capacitor/core";
 
 export interface CameraPreviewPlugin {
-  initialize(options?: { quality?: number }): Promise<void>;
+  /**
+  * parallelConversion (Android only): convert frames in row stripes on all cores. Defaults to true, except on low-RAM or fewer-than-4-core devices.
+  * analysisFormat (Android only): "RGBA" asks CameraX for RGBA_8888 analysis frames so no color conversion is done in Java. Falls back to "YUV" (default) if unsupported.
+  * analysisWidth/analysisHeight (Android only): landscape target resolution of the analysis frames, independent from preview and capture. CameraX picks the closest supported size. 1920x1080 by default; either value can be set alone.
+  * maxAnalysisFps (Android only): frames arriving faster than this are dropped before any processing. 0 (default) means no limit.
+  * blurInterpreters (Android only): number of blur model interpreters able to run at the same time. Defaults to 2. Live frames are served before detectBlur calls when all are busy.
+  * blurInterpreterThreads (Android only): threads used by each blur model interpreter. 0 (default) uses the thread count and XNNPACK setting benchmarked once on the device and saved for later launches.
+  * blurCascade (Android only): for takeSnapshot with checkBlur, decide clearly blurry or sharp frames with the Laplacian variance and only run the model when it falls between blurCascadeLow (default 50) and blurCascadeHigh (default 300).
+  */
+  initialize(options?: { quality?: number, parallelConversion?: boolean, analysisFormat?: AnalysisFormat, analysisWidth?: number, analysisHeight?: number, maxAnalysisFps?: number, blurInterpreters?: number, blurInterpreterThreads?: number, blurCascade?: boolean, blurCascadeLow?: number, blurCascadeHigh?: number }): Promise<void>;
   getResolution(): Promise<{resolution: string}>;
-  setResolution(options: {resolution: number}): Promise<void>;
+  /**
+  * analysisFormat, analysisWidth, analysisHeight, maxAnalysisFps (Android only): see initialize.
+  */
+  setResolution(options: {resolution: number, analysisFormat?: AnalysisFormat, analysisWidth?: number, analysisHeight?: number, maxAnalysisFps?: number}): Promise<void>;
   getAllCameras(): Promise<{cameras: string[]}>;
   getSelectedCamera(): Promise<{selectedCamera: string}>;
   selectCamera(options: {cameraID: string; }): Promise<void>;
@@ -22,12 +34,46 @@ export interface CameraPreviewPlugin {
   stopCamera(): Promise<void>;
   /**
   * take a snapshot as base64.
+  * maxLength/scale (Android only): downscale while converting the frame. The result is subsampled by an integer step so its longest side does not exceed maxLength, and scaleRatio is returned.
+  * includeFrameQuality (Android only): also return the exposure statistics of the frame, see getFrameQuality.
+  * resultType (Android only): "base64" (default), "url" to get the URL of the JPEG on the frame server instead (see startFrameServer), or "file" to get the path of a JPEG file like takePhoto does.
+  * For "file" and "url" the JPEG is written off the camera thread and width/height are returned. With "file", pathToSave works as in takePhoto; otherwise a new file is created in the cache directory.
+  */
+  takeSnapshot(options:{quality?:number, checkBlur?:boolean, checkQuality?:boolean, includeFrameQuality?:boolean, maxLength?:number, scale?:number, resultType?: SnapshotResultType, pathToSave?:string}): Promise<{base64?:string, url?:string, path?:string, width?:number, height?:number, isBlur?: boolean, blurStage?: BlurStage, quality?: QualityResult, frameQuality?: FrameQuality, scaleRatio?: number}>;
+  /**
+  * exposure statistics (brightness, glare, dark areas, contrast) of the next camera frame, inside the scan region if set.
+  * Computed from the luma plane in the same pass as the Laplacian blur score, without building a bitmap. Android only.
   */
-  takeSnapshot(options:{quality?:number, checkBlur?:boolean}): Promise<{base64:string, isBlur?: boolean}>;
+  getFrameQuality(): Promise<FrameQuality>;
   /**
   * analyze an image for blur detection with detailed confidence scores.
+  * Pass a base64 image, or (Android only) the path, file:// URL or content:// URI of an image file, e.g. from takePhoto.
+  * Files are decoded only as far as the check needs instead of at full resolution.
+  */
+  detectBlur(options:{image?: string, path?: string}): Promise<{isBlur: boolean, blurConfidence: number, sharpConfidence: number}>;
+  /**
+  * analyze several images for blur detection at once. Pass base64 images or file paths (Android only). Android and web only.
+  * On Android, images run through the model in batches with a single inference each.
+  * Results are in input order; an image that cannot be decoded gets an error entry.
+  */
+  detectBlurBatch(options:{images?: string[], paths?: string[]}): Promise<{results: BlurBatchResult[]}>;
+  /**
+  * whether the blur model is loaded. Until it is, blur checks use the Laplacian variance. Android only, always false on web.
+  */
+  isBlurModelReady(): Promise<{ready: boolean}>;
+  /**
+  * load an image-quality model (glare, document presence...) from the app assets (asset) or a file (path). Android only.
+  * All loaded models are evaluated together by takeSnapshot with checkQuality and by evaluateQuality, sharing one preprocessing pass.
+  * The blur model joins them under the reserved name "blur" once it is ready, so its verdict is part of the combined pass. With checkBlur set as well, isBlur reuses that verdict.
+  * failIndex: class whose score fails the verdict once it reaches failThreshold (default 0.5). Omit it for models that only report scores.
+  * interpreters: number of interpreters able to run the model at the same time. Defaults to 1.
+  */
+  loadQualityModel(options:{name: string, asset?: string, path?: string, labels?: string[], failIndex?: number, failThreshold?: number, interpreters?: number}): Promise<{inputWidth: number, inputHeight: number}>;
+  unloadQualityModel(options:{name: string}): Promise<void>;
+  /**
+  * run every loaded quality model on a base64 image. Android only.
   */
-  detectBlur(options:{image: string}): Promise<{isBlur: boolean, blurConfidence: number, sharpConfidence: number}>;
+  evaluateQuality(options:{image: string}): Promise<QualityResult>;
   /**
   * save a frame internally. Android and iOS only.
   */
@@ -36,14 +82,37 @@ export interface CameraPreviewPlugin {
   * take a snapshot on to a canvas. Web Only
   */
   takeSnapshot2(options:{canvas:HTMLCanvasElement,maxLength?:number}): Promise<{scaleRatio?:number}>;
-  takePhoto(options: {pathToSave?:string,includeBase64?: boolean}): Promise<{path?:string,base64?:string,blob?:Blob, isBlur?: boolean}>;
+  takePhoto(options: {pathToSave?:string,includeBase64?: boolean,includeUrl?: boolean}): Promise<{path?:string,base64?:string,url?:string,blob?:Blob, isBlur?: boolean}>;
   toggleTorch(options: {on: boolean}): Promise<void>;
   /**
   * get the orientation of the device.
   */
   getOrientation(): Promise<{"orientation":"PORTRAIT"|"LANDSCAPE"}>;
   startRecording(): Promise<void>;
-  stopRecording(options:{includeBase64?:boolean}): Promise<{path?:string,base64?:string,blob?:Blob}>;
+  /**
+  * stop recording. On Android, uri is the content URI of the video, to be read with readRecordingChunk.
+  * includeBase64 is meant for short clips: it loads the whole video in memory, so on Android recordings over 16 MB are returned without base64.
+  * base64Omitted is then true and size gives the recording size in bytes (Android only); read long recordings with readRecordingChunk or includeUrl instead.
+  */
+  stopRecording(options:{includeBase64?:boolean,includeUrl?:boolean}): Promise<{path?:string,uri?:string,base64?:string,base64Omitted?:boolean,size?:number,url?:string,blob?:Blob}>;
+  /**
+  * read part of a recording as base64, so long videos can be consumed chunk by chunk at bounded memory. Android only.
+  * Pass the uri returned by stopRecording, the byte offset to read from (0 by default) and the chunk length (1 MB by default, 8 MB at most).
+  * Other files are rejected. Read until eof is true, advancing offset by the returned length.
+  */
+  readRecordingChunk(options:{uri:string, offset?:number, length?:number}): Promise<{data:string, offset:number, length:number, size:number, eof:boolean}>;
+  /**
+  * start an HTTP server on 127.0.0.1 serving snapshots, photos and videos as raw bytes, so they don't go through the bridge as base64. Android only.
+  * Then takeSnapshot({resultType: "url"}), takePhoto({includeUrl: true}) and stopRecording({includeUrl: true}) return URLs that can be fetched or used as img/video sources.
+  * URLs carry the session token; requests can pass it as a token query parameter or an Authorization: Bearer header. Byte ranges are supported.
+  * CORS responses only allow the app's own web view origin, so other pages cannot read the resources with fetch.
+  * port: port to bind, any free port by default. The app must allow cleartext traffic to 127.0.0.1.
+  */
+  startFrameServer(options?:{port?:number}): Promise<{url:string, port:number, token:string}>;
+  /**
+  * stop the frame server. Returned URLs stop working and served snapshot files are deleted. Android only.
+  */
+  stopFrameServer(): Promise<void>;
   setLayout(options: {top: string, left:string, width:string, height:string}): Promise<void>;
   requestCameraPermission(): Promise<void>;
   requestMicroPhonePermission(): Promise<void>;
@@ -56,11 +125,19 @@ export interface CameraPreviewPlugin {
     eventName: 'onOrientationChanged',
     listenerFunc: onOrientationChangedListener,
   ): Promise<PluginListenerHandle>;
+  /**
+  * fired once the blur model has been loaded and warmed up in the background after initialize (Android only). ready is false if it could not be loaded.
+  */
+  addListener(
+    eventName: 'onBlurModelReady',
+    listenerFunc: onBlurModelReadyListener,
+  ): Promise<PluginListenerHandle>;
   removeAllListeners(): Promise<void>;
 }
 
 export type onPlayedListener = (result:{resolution:string}) => void;
 export type onOrientationChangedListener = () => void;
+export type onBlurModelReadyListener = (result:{ready:boolean}) => void;
 
 /**
  * measuredByPercentage: 0 in pixel, 1 in percent
@@ -73,6 +150,56 @@ export interface ScanRegion{
   measuredByPercentage: number;
 }
 
+export type AnalysisFormat = "YUV" | "RGBA";
+
+/**
+ * Which check decided isBlur: the Laplacian variance or the TFLite model.
+ */
+export type BlurStage = "laplacian" | "model";
+
+export type SnapshotResultType = "base64" | "url" | "file";
+
+/**
+ * Exposure and sharpness statistics of a camera frame, measured on the scan region.
+ */
+export interface FrameQuality {
+  /** Mean luma, 0-255. */
+  brightness: number;
+  /** Share of pixels at 250 or above, e.g. glare. */
+  clippedRatio: number;
+  /** Share of pixels at 20 or below. */
+  darkRatio: number;
+  /** Standard deviation of the luma, 0-255. */
+  contrast: number;
+  /** Laplacian variance, higher is sharper. */
+  laplacianScore: number;
+}
+
+/**
+ * Combined verdict of the quality models: pass is false if any model failed.
+ */
+export interface QualityResult {
+  pass: boolean;
+  models: {[name: string]: QualityModelResult};
+}
+
+export interface QualityModelResult {
+  pass: boolean;
+  /** Index of the highest score. */
+  index: number;
+  /** Label of the highest score, if labels were given. */
+  label?: string;
+  scores: number[];
+}
+
+export interface BlurBatchResult {
+  isBlur?: boolean;
+  blurConfidence?: number;
+  sharpConfidence?: number;
+  /** Set instead of the scores when the image could not be decoded. */
+  error?: string;
+}
+
 export enum EnumResolution {
   RESOLUTION_AUTO = 0,
   RESOLUTION_480P = 1,
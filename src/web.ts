@@ -1,6 +1,6 @@
 import { WebPlugin } from '@capacitor/core';
 import { CameraEnhancer, PlayCallbackInfo } from 'dynamsoft-camera-enhancer';
-import { CameraPreviewPlugin, EnumResolution, ScanRegion } from './definitions';
+import { BlurBatchResult, CameraPreviewPlugin, EnumResolution, FrameQuality, QualityResult, ScanRegion } from './definitions';
 import RecordRTC from 'recordrtc';
 CameraEnhancer.defaultUIElementURL = "https://cdn.jsdelivr.net/npm/dynamsoft-camera-enhancer@3.3.9/dist/dce.ui.html";
 
@@ -33,7 +33,7 @@ export class CameraPreviewWeb extends WebPlugin implements CameraPreviewPlugin {
 
   private desiredJpegQuality: number = 0.95; // Default to high quality (0.0-1.0)
 
-  async initialize(options?: { quality?: number }): Promise<void> {
+  async initialize(options?: { quality?: number, parallelConversion?: boolean }): Promise<void> {
     // Get quality parameter from initialization, default to 95% if not specified
     if (options?.quality !== undefined) {
       this.desiredJpegQuality = Math.max(1, Math.min(100, options.quality)) / 100.0;
@@ -269,7 +269,11 @@ export class CameraPreviewWeb extends WebPlugin implements CameraPreviewPlugin {
     }
   }
 
-  async detectBlur(options: {image: string}): Promise<{isBlur: boolean, blurConfidence: number, sharpConfidence: number}> {
+  async detectBlur(options: {image?: string, path?: string}): Promise<{isBlur: boolean, blurConfidence: number, sharpConfidence: number}> {
+    const image = options.image;
+    if (!image) {
+      throw new Error('Only images are supported on web');
+    }
     try {
       // Create image element from base64
       const img = new Image();
@@ -316,10 +320,10 @@ export class CameraPreviewWeb extends WebPlugin implements CameraPreviewPlugin {
         };
         
         // Handle both data URLs and base64 strings
-        if (options.image.startsWith('data:')) {
-          img.src = options.image;
+        if (image.startsWith('data:')) {
+          img.src = image;
         } else {
-          img.src = `data:image/jpeg;base64,${options.image}`;
+          img.src = `data:image/jpeg;base64,${image}`;
         }
       });
     } catch (error) {
@@ -327,6 +331,49 @@ export class CameraPreviewWeb extends WebPlugin implements CameraPreviewPlugin {
     }
   }
 
+  async detectBlurBatch(options: {images?: string[], paths?: string[]}): Promise<{results: BlurBatchResult[]}> {
+    if (!options.images) {
+      throw new Error('Only images are supported on web');
+    }
+    const results = await Promise.all(options.images.map((image) =>
+      this.detectBlur({image: image}).catch((error) => ({error: `${error}`}))
+    ));
+    return {results: results};
+  }
+
+  async isBlurModelReady(): Promise<{ready: boolean}> {
+    // The web implementation only uses the Laplacian variance
+    return {ready: false};
+  }
+
+  async loadQualityModel(_options: {name: string, asset?: string, path?: string, labels?: string[], failIndex?: number, failThreshold?: number, interpreters?: number}): Promise<{inputWidth: number, inputHeight: number}> {
+    throw this.unimplemented('Quality models are not supported on web.');
+  }
+
+  async unloadQualityModel(_options: {name: string}): Promise<void> {
+    throw this.unimplemented('Quality models are not supported on web.');
+  }
+
+  async evaluateQuality(_options: {image: string}): Promise<QualityResult> {
+    throw this.unimplemented('Quality models are not supported on web.');
+  }
+
+  async getFrameQuality(): Promise<FrameQuality> {
+    throw this.unimplemented('Frame quality is not supported on web.');
+  }
+
+  async readRecordingChunk(_options: {uri: string, offset?: number, length?: number}): Promise<{data: string, offset: number, length: number, size: number, eof: boolean}> {
+    throw this.unimplemented('Recordings are returned as a blob on web.');
+  }
+
+  async startFrameServer(_options?: {port?: number}): Promise<{url: string, port: number, token: string}> {
+    throw this.unimplemented('The frame server is not supported on web.');
+  }
+
+  async stopFrameServer(): Promise<void> {
+    throw this.unimplemented('The frame server is not supported on web.');
+  }
+
   async takeSnapshot2(options:{canvas:HTMLCanvasElement,maxLength?:number}): Promise<{scaleRatio?:number}> {
     if (this.camera) {
       let canvas = options.canvas;